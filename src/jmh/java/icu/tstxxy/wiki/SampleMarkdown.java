@@ -0,0 +1,60 @@
+package icu.tstxxy.wiki;
+
+import java.util.Random;
+
+/**
+ * Deterministic wiki-like markdown documents of a requested size for the benchmarks.
+ */
+public final class SampleMarkdown {
+    private static final String[] WORDS = {
+        "vertx", "event", "loop", "page", "wiki", "markdown", "render", "cache", "pool", "query",
+        "verticle", "router", "handler", "future", "promise", "buffer", "stream", "reply", "json", "index",
+    };
+
+    private SampleMarkdown() {
+    }
+
+    public static String of(int chars) {
+        var random = new Random(chars);
+        var markdown = new StringBuilder(chars + 256);
+        int section = 0;
+        while (markdown.length() < chars) {
+            switch (section++ % 5) {
+                case 0:
+                    markdown.append("## Section ").append(section).append("\n\n");
+                    break;
+                case 1:
+                case 3:
+                    sentence(markdown, random, 40 + random.nextInt(80));
+                    markdown.append("\n\n");
+                    break;
+                case 2:
+                    for (int i = 0; i < 4; i++) {
+                        markdown.append("- ");
+                        sentence(markdown, random, 8);
+                        markdown.append('\n');
+                    }
+                    markdown.append('\n');
+                    break;
+                default:
+                    markdown.append("    vertx.eventBus().request(\"wikidb.queue\", request, options);\n")
+                        .append("    context.response().end(html);\n\n");
+            }
+        }
+        return markdown.toString();
+    }
+
+    private static void sentence(StringBuilder markdown, Random random, int words) {
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (i % 17 == 5) {
+                markdown.append('*').append(word).append('*');
+            } else if (i % 23 == 11) {
+                markdown.append("[").append(word).append("](/wiki/").append(word).append(')');
+            } else {
+                markdown.append(word);
+            }
+            markdown.append(i == words - 1 ? "." : " ");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures get-page-by-id throughput on wikidb.queue for an increasing number of DatabaseVerticle
+ * instances. Needs the Postgres database configured below with at least one page; the page cache is
+ * disabled so every request reaches the pool.
+ * <p>
+ * Run with {@code ./mvnw -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=icu.tstxxy.wiki.database.DatabaseScalingBenchmark -Dexec.args="1 2 4 8"}.
+ */
+public class DatabaseScalingBenchmark {
+    private static final int CONCURRENCY = 256;
+    private static final long WARMUP_MS = 5_000;
+    private static final long MEASURE_MS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        WikiCodecs.register(vertx);
+        JsonObject config = new JsonObject()
+            .put(DatabaseVerticle.CONFIG_WIKIDB_CACHE_MAX_BYTES, 0L)
+            .put(DatabaseVerticle.CONFIG_WIKIDB_POOL_MAX_SIZE, Integer.getInteger("pool.size", 5));
+
+        String[] instanceCounts = args.length == 0 ? new String[]{"1", "2", "4"} : args;
+        for (String instances : instanceCounts) {
+            String deploymentId = vertx.deployVerticle(DatabaseVerticle.class,
+                new DeploymentOptions().setInstances(Integer.parseInt(instances)).setConfig(config))
+                .toCompletionStage().toCompletableFuture().get();
+
+            run(vertx, WARMUP_MS);
+            long requests = run(vertx, MEASURE_MS);
+            System.out.printf("instances=%s pool=%d throughput=%.0f req/s%n", instances,
+                config.getInteger(DatabaseVerticle.CONFIG_WIKIDB_POOL_MAX_SIZE), requests * 1000.0 / MEASURE_MS);
+
+            vertx.undeploy(deploymentId).toCompletionStage().toCompletableFuture().get();
+        }
+        vertx.close();
+    }
+
+    private static long run(Vertx vertx, long durationMs) throws Exception {
+        AtomicLong completed = new AtomicLong();
+        long deadline = System.currentTimeMillis() + durationMs;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicLong running = new AtomicLong(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            vertx.runOnContext(v -> loop(vertx, deadline, completed, running, done));
+        }
+        done.get();
+        return completed.get();
+    }
+
+    private static void loop(Vertx vertx, long deadline, AtomicLong completed, AtomicLong running,
+                             CompletableFuture<Void> done) {
+        if (System.currentTimeMillis() >= deadline) {
+            if (running.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+            return;
+        }
+        vertx.eventBus().request("wikidb.queue", new JsonObject().put("id", 1),
+            new DeliveryOptions().addHeader("action", "get-page-by-id")).onComplete(ar -> {
+            if (ar.succeeded()) {
+                completed.incrementAndGet();
+            }
+            loop(vertx, deadline, completed, running, done);
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.SampleMarkdown;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a cached {@link DatabaseService#fetchPageById(int)} against a stubbed pool, through the
+ * event bus proxy and through the direct in-process service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseServiceBenchmark {
+    private static final String ADDRESS = "bench.wikidb";
+
+    @Param({"eventbus", "local"})
+    public String mode;
+
+    private Vertx vertx;
+    private DatabaseService service;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        JsonObject config = new JsonObject().put(DatabaseVerticle.CONFIG_WIKIDB_QUEUE, ADDRESS);
+        DatabaseVerticle verticle = new DatabaseVerticle() {
+            @Override
+            public JsonObject config() {
+                return config;
+            }
+        };
+        verticle.init(vertx, vertx.getOrCreateContext());
+        verticle.setUp(StubPool.create(1, SampleMarkdown.of(4096)));
+        vertx.eventBus().consumer(ADDRESS, verticle::onMessage);
+        LocalDatabaseService.register(vertx, ADDRESS, verticle);
+
+        service = mode.equals("local")
+            ? DatabaseService.createLocal(vertx, ADDRESS, 5000)
+            : DatabaseService.createProxy(vertx, ADDRESS, 5000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public Object fetchPageById() throws Exception {
+        return service.fetchPageById(1).toCompletionStage().toCompletableFuture().get();
+    }
+}
@@ -0,0 +1,96 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.SampleMarkdown;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DatabaseVerticle#onMessage(Message)} dispatch for the read actions against a stubbed pool,
+ * with the page cache enabled (hits after the first call) or disabled (every call maps rows).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"get-page-by-id", "all-pages", "pages-after"})
+    public String action;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private Vertx vertx;
+    private DatabaseVerticle verticle;
+    private Message<Object> message;
+    private Object reply;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        JsonObject config = new JsonObject()
+            .put(DatabaseVerticle.CONFIG_WIKIDB_CACHE_MAX_BYTES, cached ? 64L * 1024 * 1024 : 0L);
+        verticle = new DatabaseVerticle() {
+            @Override
+            public JsonObject config() {
+                return config;
+            }
+        };
+        verticle.init(vertx, vertx.getOrCreateContext());
+        verticle.setUp(StubPool.create(action.equals("get-page-by-id") ? 1 : 200, SampleMarkdown.of(4096)));
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add("action", action);
+        JsonObject body = new JsonObject().put("id", 1).put("after", 0).put("limit", 200);
+        message = stubMessage(headers, body);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole blackhole) {
+        verticle.onMessage(message);
+        blackhole.consume(reply);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Message<Object> stubMessage(MultiMap headers, Object body) {
+        return (Message<Object>) Proxy.newProxyInstance(Message.class.getClassLoader(), new Class<?>[]{Message.class},
+            (p, method, args) -> {
+                switch (method.getName()) {
+                    case "headers":
+                        return headers;
+                    case "body":
+                        return body;
+                    case "reply":
+                    case "fail":
+                        reply = args[0];
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+    }
+}
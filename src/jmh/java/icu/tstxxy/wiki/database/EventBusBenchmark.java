@@ -0,0 +1,71 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.SampleMarkdown;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local event bus request/reply round trip of a page, as a {@link JsonObject} (copied on send and reply)
+ * and as a {@link Page} carried by reference through {@link WikiCodecs}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBusBenchmark {
+    @Param({"4096", "262144"})
+    public int pageSize;
+
+    private Vertx vertx;
+    private JsonObject jsonPage;
+    private Page page;
+    private final DeliveryOptions options = new DeliveryOptions().addHeader("action", "get-page-by-id");
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        WikiCodecs.register(vertx);
+        String content = SampleMarkdown.of(pageSize);
+        jsonPage = new JsonObject().put("id", 1).put("title", "Benchmark page").put("content", content);
+        page = new Page(1, "Benchmark page", content);
+        vertx.eventBus().<JsonObject>consumer("bench.json", msg -> msg.reply(jsonPage));
+        vertx.eventBus().<JsonObject>consumer("bench.typed", msg -> msg.reply(page));
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public Object jsonRoundTrip() throws Exception {
+        return roundTrip("bench.json");
+    }
+
+    @Benchmark
+    public Object typedRoundTrip() throws Exception {
+        return roundTrip("bench.typed");
+    }
+
+    private Object roundTrip(String address) throws Exception {
+        return vertx.eventBus().request(address, new JsonObject().put("id", 1), options)
+            .toCompletionStage().toCompletableFuture().get().body();
+    }
+}
@@ -0,0 +1,73 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link PgPool} answering every query immediately with the same rows, so benchmarks measure the
+ * verticle's own work without a database.
+ */
+final class StubPool {
+    private StubPool() {
+    }
+
+    static PgPool create(int rows, String content) {
+        Row row = proxy(Row.class, (name, args) -> {
+            switch (name) {
+                case "getInteger":
+                    return 1;
+                case "getLong":
+                    return 1L;
+                case "getString":
+                    return "title".equals(args[0]) ? "Benchmark page" : content;
+                default:
+                    return null;
+            }
+        });
+        List<Row> list = java.util.Collections.nCopies(rows, row);
+        RowSet<?> rowSet = proxy(RowSet.class, (name, args) -> {
+            switch (name) {
+                case "iterator":
+                    Iterator<Row> it = list.iterator();
+                    return proxy(RowIterator.class, (n, a) -> "hasNext".equals(n) ? it.hasNext() : it.next());
+                case "size":
+                case "rowCount":
+                    return rows;
+                case "forEach":
+                    @SuppressWarnings("unchecked") Consumer<Row> consumer = (Consumer<Row>) args[0];
+                    list.forEach(consumer);
+                    return null;
+                default:
+                    return null;
+            }
+        });
+        Object query = proxy(io.vertx.sqlclient.PreparedQuery.class, (name, args) -> {
+            if (args != null && args.length > 0 && args[args.length - 1] instanceof Handler) {
+                @SuppressWarnings("unchecked") Handler<Object> handler = (Handler<Object>) args[args.length - 1];
+                handler.handle(Future.succeededFuture(rowSet));
+                return null;
+            }
+            return Future.succeededFuture(rowSet);
+        });
+        return proxy(PgPool.class, (name, args) -> "query".equals(name) || "preparedQuery".equals(name) ? query : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            (p, method, args) -> answer.apply(method.getName(), args));
+    }
+
+    private interface Answer {
+        Object apply(String method, Object[] args);
+    }
+}
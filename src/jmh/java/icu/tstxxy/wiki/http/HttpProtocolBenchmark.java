@@ -0,0 +1,98 @@
+package icu.tstxxy.wiki.http;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpVersion;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays browser visits against a running wiki over HTTP/1.1 and over HTTP/2, and reports how many TLS
+ * handshakes each needed, how many of them resumed an earlier session and the request latency percentiles.
+ * A visit fires {@code requests} concurrent GETs of {@code path} and then drops its connections, like a
+ * browser coming back later.
+ * <p>
+ * Run with {@code ./mvnw -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=icu.tstxxy.wiki.http.HttpProtocolBenchmark -Dexec.args="h1 h2"}, tuned with
+ * {@code -Dhost=localhost -Dport=443 -Dpath=/app/index.html -Dvisits=200 -Drequests=24}.
+ */
+public class HttpProtocolBenchmark {
+    private static final String HOST = System.getProperty("host", "localhost");
+    private static final int PORT = Integer.getInteger("port", 443);
+    private static final String PATH = System.getProperty("path", "/app/index.html");
+    private static final int VISITS = Integer.getInteger("visits", 200);
+    private static final int REQUESTS = Integer.getInteger("requests", 24);
+
+    public static void main(String[] args) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        for (String mode : args.length == 0 ? new String[]{"h1", "h2"} : args) {
+            boolean h2 = mode.equals("h2");
+            HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                .setSsl(true).setTrustAll(true).setVerifyHost(false)
+                .setUseAlpn(h2)
+                .setProtocolVersion(h2 ? HttpVersion.HTTP_2 : HttpVersion.HTTP_1_1)
+                // Browsers open at most six HTTP/1.1 connections and a single HTTP/2 one per origin
+                .setMaxPoolSize(6)
+                .setHttp2MaxPoolSize(1));
+
+            List<HttpConnection> open = new ArrayList<>();
+            Set<ByteBuffer> sessions = new HashSet<>();
+            int[] handshakes = {0, 0};
+            client.connectionHandler(connection -> {
+                synchronized (open) {
+                    open.add(connection);
+                    handshakes[0]++;
+                    if (connection.sslSession() != null && !sessions.add(ByteBuffer.wrap(connection.sslSession().getId()))) {
+                        handshakes[1]++;
+                    }
+                }
+            });
+
+            long[] latencies = new long[VISITS * REQUESTS];
+            AtomicInteger failures = new AtomicInteger();
+            for (int visit = 0; visit < VISITS; visit++) {
+                List<Future> requests = new ArrayList<>(REQUESTS);
+                for (int i = 0; i < REQUESTS; i++) {
+                    int slot = visit * REQUESTS + i;
+                    long start = System.nanoTime();
+                    requests.add(client.request(HttpMethod.GET, PORT, HOST, PATH)
+                        .compose(request -> request.send())
+                        .compose(response -> response.body())
+                        .onComplete(ar -> {
+                            latencies[slot] = System.nanoTime() - start;
+                            if (ar.failed()) {
+                                failures.incrementAndGet();
+                            }
+                        }));
+                }
+                CompositeFuture.join(requests).toCompletionStage().toCompletableFuture().handle((r, e) -> null).get();
+                List<Future> closed = new ArrayList<>();
+                synchronized (open) {
+                    open.forEach(connection -> closed.add(connection.close()));
+                    open.clear();
+                }
+                CompositeFuture.join(closed).toCompletionStage().toCompletableFuture().handle((r, e) -> null).get();
+                // Let the pool evict the closed connections before the next visit
+                Thread.sleep(20);
+            }
+
+            Arrays.sort(latencies);
+            System.out.printf("%s visits=%d requests/visit=%d failures=%d handshakes=%d resumed=%d p50=%.2fms p99=%.2fms%n",
+                mode, VISITS, REQUESTS, failures.get(), handshakes[0], handshakes[1],
+                latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+            client.close().toCompletionStage().toCompletableFuture().get();
+        }
+        vertx.close();
+    }
+}
@@ -0,0 +1,80 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.SampleMarkdown;
+import icu.tstxxy.wiki.database.Page;
+import icu.tstxxy.wiki.database.PageList;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON encoding and decoding of the payloads built by the page API: one page with its rendered HTML
+ * as in {@code apiGetPage}, and a listing slice as in {@code apiRoot}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PagePayloadBenchmark {
+    @Param({"4096", "65536"})
+    public int pageSize;
+
+    @Param({"200"})
+    public int listSize;
+
+    private Page page;
+    private String html;
+    private PageList pages;
+    private String encodedPage;
+
+    @Setup
+    public void setUp() {
+        String markdown = SampleMarkdown.of(pageSize);
+        page = new Page(1, "Benchmark page", markdown);
+        html = com.github.rjeschke.txtmark.Processor.process(markdown);
+        List<Page> list = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            list.add(new Page(i, "Page " + i, markdown));
+        }
+        pages = new PageList(list, listSize);
+        encodedPage = encodePage();
+    }
+
+    @Benchmark
+    public String encodePage() {
+        var payload = new JsonObject()
+            .put("title", page.title())
+            .put("id", page.id())
+            .put("markdown", page.content())
+            .put("html", html);
+        return new JsonObject().put("success", true).put("page", payload).encode();
+    }
+
+    @Benchmark
+    public JsonObject decodePage() {
+        return new JsonObject(encodedPage);
+    }
+
+    @Benchmark
+    public String encodePageList() {
+        var json = new JsonArray();
+        pages.pages().forEach(p -> json.add(p.toJson()));
+        return new JsonObject().put("success", true).put("pages", json).put("next", pages.next()).encode();
+    }
+}
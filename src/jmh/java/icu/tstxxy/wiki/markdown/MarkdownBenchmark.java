@@ -0,0 +1,73 @@
+package icu.tstxxy.wiki.markdown;
+
+import com.github.rjeschke.txtmark.Processor;
+import icu.tstxxy.wiki.ContentHash;
+import icu.tstxxy.wiki.SampleMarkdown;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-document txtmark rendering against the block-cached rendering of the live preview, where
+ * every invocation edits one block of the document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkdownBenchmark {
+    @Param({"1024", "32768", "524288"})
+    public int size;
+
+    private String markdown;
+    private String[] edits;
+    private BlockCache cache;
+    private int edit;
+
+    @Setup
+    public void setUp() {
+        markdown = SampleMarkdown.of(size);
+        edits = new String[64];
+        for (int i = 0; i < edits.length; i++) {
+            edits[i] = markdown + "\n\nTyping at the end of the page " + i + "\n";
+        }
+        cache = new BlockCache(256L * 1024 * 1024);
+        renderBlocks(markdown);
+    }
+
+    @Benchmark
+    public String processWholeDocument() {
+        return Processor.process(markdown);
+    }
+
+    @Benchmark
+    public String processChangedBlocks() {
+        return renderBlocks(edits[edit++ & (edits.length - 1)]);
+    }
+
+    private String renderBlocks(String document) {
+        var html = new StringBuilder();
+        for (String block : IncrementalRenderer.splitBlocks(document)) {
+            long hash = ContentHash.of(block);
+            String rendered = cache.get(hash, block);
+            if (rendered == null) {
+                rendered = Processor.process(block);
+                cache.put(hash, block, rendered);
+            }
+            html.append(rendered);
+        }
+        return html.toString();
+    }
+}
@@ -26,6 +26,7 @@ import java.util.stream.Collectors;
 
 
 public class WikiVerticle extends AbstractVerticle {
+    public static final String CONFIG_WIKIDB_INSTANCES = "wikidb.instances";
     private static final String SQL_CREATE_PAGES_TABLE = "create table if not exists Pages (Id serial primary key, Name varchar(255) unique, Content text);";
     private static final String SQL_GET_PAGE = "select Id, Content from Pages where Name=$1"; // <1>
 
@@ -52,10 +53,12 @@ public class WikiVerticle extends AbstractVerticle {
     @Override
     public void start(Promise<Void> startPromise) {
         Promise<String> dbVerticleDeployment = Promise.promise();
-        vertx.deployVerticle(new DatabaseVerticle(), dbVerticleDeployment);
+        vertx.deployVerticle(DatabaseVerticle.class, new DeploymentOptions()
+                .setInstances(config().getInteger(CONFIG_WIKIDB_INSTANCES, 1)).setConfig(config()),
+            dbVerticleDeployment);
         dbVerticleDeployment.future().compose(id -> {
             Promise<String> httpVerticleDeployment = Promise.promise();
-            vertx.deployVerticle(HttpServerVerticle.class, new DeploymentOptions().setInstances(2),
+            vertx.deployVerticle(HttpServerVerticle.class, new DeploymentOptions().setInstances(2).setConfig(config()),
                 httpVerticleDeployment);
             return httpVerticleDeployment.future();
         }).onSuccess(s -> {
@@ -0,0 +1,20 @@
+package icu.tstxxy.wiki.database;
+
+public final class AuthResult {
+    public static final AuthResult FOUND = new AuthResult(true);
+    public static final AuthResult NOT_FOUND = new AuthResult(false);
+
+    private final boolean found;
+
+    private AuthResult(boolean found) {
+        this.found = found;
+    }
+
+    public static AuthResult of(boolean found) {
+        return found ? FOUND : NOT_FOUND;
+    }
+
+    public boolean found() {
+        return found;
+    }
+}
@@ -0,0 +1,73 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.tracing.Trace;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Typed access to the wiki database, answered by the {@link DatabaseVerticle} instances.
+ * <p>
+ * {@link #createProxy} reaches them through messages on their queue; {@link #createLocal} calls a verticle of
+ * the same Vert.x instance directly on its event loop, skipping the message headers, the codecs and the reply
+ * consumer. Both complete on the caller's context, fail a missing page with a {@link io.vertx.core.eventbus.ReplyException}
+ * carrying {@link ErrorCode#NOT_FOUND}, and fail with a {@link io.vertx.core.eventbus.ReplyFailure#TIMEOUT}
+ * when no answer came within the timeout.
+ */
+public interface DatabaseService {
+
+    static DatabaseService createProxy(Vertx vertx, String address, long timeoutMs) {
+        return new EventBusDatabaseService(vertx, address, timeoutMs, null);
+    }
+
+    static DatabaseService createLocal(Vertx vertx, String address, long timeoutMs) {
+        return new LocalDatabaseService(vertx, address, timeoutMs, null);
+    }
+
+    /**
+     * This service, with the time spent on each call recorded as spans of {@code trace}.
+     */
+    DatabaseService traced(Trace trace);
+
+    Future<PageList> fetchAllPages();
+
+    Future<PageList> fetchAllPagesData();
+
+    Future<Page> fetchPage(String title);
+
+    Future<Page> fetchPageById(int id);
+
+    /**
+     * Returns up to {@code limit} pages with an id above {@code after} in id order, with the cursor of the next slice.
+     */
+    Future<PageList> fetchPagesAfter(int after, int limit, boolean withContent);
+
+    Future<Void> createPage(String title, String content);
+
+    /**
+     * Saves the content of a page; a save coalesced with a later save of the same page answers
+     * {@link SavedPage#SUPERSEDED} once the later one is committed.
+     */
+    Future<SavedPage> savePage(int id, String content);
+
+    Future<Void> deletePage(int id);
+
+    /**
+     * Creates the pages, skipping those whose title is taken; answers the number {@code imported} and {@code skipped}.
+     */
+    Future<JsonObject> importPages(PageList pages);
+
+    Future<Boolean> authenticate(String username, String password);
+
+    Future<PageList> search(String query, int limit);
+
+    Future<PageList> fetchTitlesByPrefix(String prefix, int limit);
+
+    /**
+     * Lists the revisions of a page older than {@code before}, newest first.
+     */
+    Future<JsonArray> fetchPageRevisions(int id, int before, int limit);
+
+    Future<JsonObject> fetchPageRevision(int id, int revision);
+}
@@ -1,29 +1,93 @@
 package icu.tstxxy.wiki.database;
 
+import icu.tstxxy.wiki.metrics.Counter;
+import icu.tstxxy.wiki.metrics.Histogram;
+import icu.tstxxy.wiki.metrics.MetricsRegistry;
+import icu.tstxxy.wiki.tracing.Trace;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
-import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.pgclient.PgPool;
 import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
 import io.vertx.sqlclient.Tuple;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.function.Supplier;
 
-public class DatabaseVerticle extends AbstractVerticle {
+/**
+ * Owns the Postgres pools and the in-memory page indexes, and answers {@link DatabaseService} calls made
+ * on its context, either from messages on {@code wikidb.queue} or from a {@link DatabaseService#createLocal}
+ * service of the same Vert.x instance.
+ */
+public class DatabaseVerticle extends AbstractVerticle implements DatabaseService {
     public static final String CONFIG_WIKIDB_QUEUE = "wikidb.queue";
+    /**
+     * Message header with the wall clock time, in milliseconds, after which the sender no longer waits for the reply.
+     */
+    public static final String DEADLINE_HEADER = "deadline";
     public static final String CONFIG_WIKIDB_SQL_QUERIES_RESOURCE_FILE = "wikidb.sqlqueries.resource.file";
+    public static final String CONFIG_WIKIDB_PG_HOST = "wikidb.pg.host";
+    public static final String CONFIG_WIKIDB_PG_PORT = "wikidb.pg.port";
+    public static final String CONFIG_WIKIDB_PG_DATABASE = "wikidb.pg.database";
+    public static final String CONFIG_WIKIDB_PG_USER = "wikidb.pg.user";
+    public static final String CONFIG_WIKIDB_PG_PASSWORD = "wikidb.pg.password";
+    public static final String CONFIG_WIKIDB_PG_PIPELINING_LIMIT = "wikidb.pg.pipelining.limit";
+    public static final String CONFIG_WIKIDB_POOL_MAX_SIZE = "wikidb.pool.max.size";
+    public static final String CONFIG_WIKIDB_POOL_MAX_WAIT_QUEUE_SIZE = "wikidb.pool.max.wait.queue.size";
+    public static final String CONFIG_WIKIDB_CACHE_MAX_BYTES = "wikidb.cache.max.bytes";
+    public static final String CONFIG_WIKIDB_SAVE_BATCH_WINDOW_MS = "wikidb.save.batch.window.ms";
+    public static final String CONFIG_WIKIDB_SAVE_BATCH_MAX_SIZE = "wikidb.save.batch.max.size";
+    public static final String CONFIG_WIKIDB_SEARCH_MAX_LIMIT = "wikidb.search.max.limit";
+    public static final String CONFIG_WIKIDB_TITLES_MAX_LIMIT = "wikidb.titles.max.limit";
+    public static final String CONFIG_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL = "wikidb.revisions.snapshot.interval";
+    public static final String CONFIG_WIKIDB_REVISIONS_HEADS_MAX_BYTES = "wikidb.revisions.heads.max.bytes";
+    public static final String CONFIG_WIKIDB_REVISIONS_MAX_LIMIT = "wikidb.revisions.max.limit";
+    public static final String CONFIG_WIKIDB_REPLICAS = "wikidb.replicas";
+    public static final String CONFIG_WIKIDB_REPLICAS_READ_YOUR_WRITES_MS = "wikidb.replicas.read.your.writes.ms";
+    public static final String CONFIG_WIKIDB_REPLICAS_MAX_LAG_MS = "wikidb.replicas.max.lag.ms";
+    public static final String CONFIG_WIKIDB_REPLICAS_HEALTH_INTERVAL_MS = "wikidb.replicas.health.interval.ms";
+    private static final int INDEX_LOAD_BATCH_SIZE = 1000;
+    private static final List<String> ACTIONS = List.of("all-pages", "get-page", "create-page", "save-page",
+        "delete-page", "all-pages-data", "get-page-by-id", "pages-after", "authenticate",
+        "search", "titles-by-prefix", "page-revisions", "get-page-revision",
+        "import-pages");
+    private static final long DEFAULT_CACHE_MAX_BYTES = 128L * 1024 * 1024;
+    private static final long DEFAULT_REVISION_HEADS_MAX_BYTES = 32L * 1024 * 1024;
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseVerticle.class);
 
+    private String address;
     private PgPool dbClient;
+    private ReplicaHealth replicaHealth;
+    private ReadRouter readRouter;
+    private RecentWrites recentWrites;
+    private PageCache pageCache;
+    private SaveBatcher saveBatcher;
+    private SearchIndex searchIndex;
+    private TitleIndex titleIndex;
+    private RevisionHeads revisionHeads;
+    private int snapshotInterval;
+    private Counter snapshotRevisions;
+    private Counter deltaRevisions;
+    private SingleFlight reads;
+    private final Map<String, Histogram> actionLatency = new HashMap<>();
+    private Counter inFlight;
+    private Counter expired;
 
     private final HashMap<SqlQuery, String> sqlQueries = new HashMap<>();
 
@@ -41,173 +105,596 @@ public class DatabaseVerticle extends AbstractVerticle {
         queriesInputStream.close();
 
         sqlQueries.put(SqlQuery.CREATE_PAGES_TABLE, queriesProps.getProperty("create-pages-table"));
+        sqlQueries.put(SqlQuery.ADD_PAGES_REVISION_COLUMN, queriesProps.getProperty("add-pages-revision-column"));
+        sqlQueries.put(SqlQuery.CREATE_PAGE_REVISIONS_TABLE, queriesProps.getProperty("create-page-revisions-table"));
         sqlQueries.put(SqlQuery.ALL_PAGES, queriesProps.getProperty("all-pages"));
         sqlQueries.put(SqlQuery.ALL_PAGES_DATA, queriesProps.getProperty("all-pages-data"));
         sqlQueries.put(SqlQuery.GET_PAGE, queriesProps.getProperty("get-page"));
         sqlQueries.put(SqlQuery.CREATE_PAGE, queriesProps.getProperty("create-page"));
+        sqlQueries.put(SqlQuery.IMPORT_PAGE, queriesProps.getProperty("import-page"));
         sqlQueries.put(SqlQuery.SAVE_PAGE, queriesProps.getProperty("save-page"));
         sqlQueries.put(SqlQuery.DELETE_PAGE, queriesProps.getProperty("delete-page"));
         sqlQueries.put(SqlQuery.GET_PAGE_BY_ID, queriesProps.getProperty("get-page-by-id"));
         sqlQueries.put(SqlQuery.AUTHENTICATE, queriesProps.getProperty("authenticate"));
+        sqlQueries.put(SqlQuery.PAGES_AFTER, queriesProps.getProperty("pages-after"));
+        sqlQueries.put(SqlQuery.PAGE_TITLES_AFTER, queriesProps.getProperty("page-titles-after"));
+        sqlQueries.put(SqlQuery.PAGE_REVISIONS, queriesProps.getProperty("page-revisions"));
+        sqlQueries.put(SqlQuery.PAGE_REVISION, queriesProps.getProperty("page-revision"));
+        sqlQueries.put(SqlQuery.CREATE_REPLICA_HEARTBEAT_TABLE, queriesProps.getProperty("create-replica-heartbeat-table"));
+        sqlQueries.put(SqlQuery.WRITE_REPLICA_HEARTBEAT, queriesProps.getProperty("write-replica-heartbeat"));
+        sqlQueries.put(SqlQuery.REPLICA_LAG, queriesProps.getProperty("replica-lag"));
     }
 
     public void start(Promise<Void> promise) throws IOException {
+        List<PgPool> replicas = new ArrayList<>();
+        for (Object replica : config().getJsonArray(CONFIG_WIKIDB_REPLICAS, new JsonArray())) {
+            replicas.add(pool((JsonObject) replica));
+        }
+        setUp(pool(new JsonObject()), replicas);
+
+        // Several instances may start concurrently and Postgres does not serialize "create table if not exists";
+        // the indexes are built once for all of them, outside the lock, and every instance waits for them before taking messages
+        Context context = vertx.getOrCreateContext();
+        vertx.sharedData().getLocalLock(CONFIG_WIKIDB_QUEUE).compose(lock -> dbClient.getConnection().compose(conn ->
+            conn.query(sqlQueries.get(SqlQuery.CREATE_PAGES_TABLE)).execute()
+                .compose(rs -> conn.query(sqlQueries.get(SqlQuery.ADD_PAGES_REVISION_COLUMN)).execute())
+                .compose(rs -> conn.query(sqlQueries.get(SqlQuery.CREATE_PAGE_REVISIONS_TABLE)).execute())
+                .compose(rs -> conn.query(sqlQueries.get(SqlQuery.CREATE_REPLICA_HEARTBEAT_TABLE)).execute())
+                .onComplete(ar -> conn.close()))
+            .onComplete(ar -> lock.release()))
+            .compose(rs -> searchIndex.load(() -> loadIndexes(0)))
+            // The first instance's load completes on its own context
+            .onComplete(ar -> context.runOnContext(v -> started(promise, replicas, ar)));
+    }
+
+    private void started(Promise<Void> promise, List<PgPool> replicas, AsyncResult<Void> ar) {
+        if (ar.failed()) {
+            LOGGER.error(ar.cause().getMessage());
+            promise.fail(ar.cause());
+            return;
+        }
+        if (!replicas.isEmpty()) {
+            long maxLagMs = config().getLong(CONFIG_WIKIDB_REPLICAS_MAX_LAG_MS,
+                config().getLong(CONFIG_WIKIDB_REPLICAS_READ_YOUR_WRITES_MS, 2000L));
+            long intervalMs = config().getLong(CONFIG_WIKIDB_REPLICAS_HEALTH_INTERVAL_MS, 5000L);
+            checkReplicas(maxLagMs, intervalMs);
+            vertx.setPeriodic(intervalMs, t -> checkReplicas(maxLagMs, intervalMs));
+        }
+        vertx.eventBus().consumer(address, this::onMessage);
+        LocalDatabaseService.register(vertx, address, this);
+        promise.complete();
+    }
+
+    private void checkReplicas(long maxLagMs, long intervalMs) {
+        // The instances share the replicas' health, so one check per interval does for all of them
+        if (!replicaHealth.claimCheck(System.currentTimeMillis(), intervalMs)) {
+            return;
+        }
+        readRouter.checkHealth(sqlQueries.get(SqlQuery.WRITE_REPLICA_HEARTBEAT), sqlQueries.get(SqlQuery.REPLICA_LAG),
+            maxLagMs);
+    }
+
+    /**
+     * Pool to the primary, or to a replica whose {@code host} and {@code port} are given in {@code server};
+     * the other connection settings and the pool size are the primary's.
+     */
+    private PgPool pool(JsonObject server) {
+        return PgPool.pool(vertx, new PgConnectOptions()
+            .setPort(server.getInteger("port", config().getInteger(CONFIG_WIKIDB_PG_PORT, 5432)))
+            .setHost(server.getString("host", config().getString(CONFIG_WIKIDB_PG_HOST, "localhost")))
+            .setDatabase(config().getString(CONFIG_WIKIDB_PG_DATABASE, "wiki"))
+            .setUser(config().getString(CONFIG_WIKIDB_PG_USER, "postgres"))
+            .setPassword(config().getString(CONFIG_WIKIDB_PG_PASSWORD, "qwer1234"))
+            .setPipeliningLimit(config().getInteger(CONFIG_WIKIDB_PG_PIPELINING_LIMIT, PgConnectOptions.DEFAULT_PIPELINING_LIMIT)),
+            new PoolOptions()
+                .setMaxSize(config().getInteger(CONFIG_WIKIDB_POOL_MAX_SIZE, 5))
+                .setMaxWaitQueueSize(config().getInteger(CONFIG_WIKIDB_POOL_MAX_WAIT_QUEUE_SIZE, PoolOptions.DEFAULT_MAX_WAIT_QUEUE_SIZE)));
+    }
+
+    private Future<Void> loadIndexes(int after) {
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.PAGES_AFTER))
+            .execute(Tuple.of(after, INDEX_LOAD_BATCH_SIZE))
+            .compose(rs -> {
+                int last = after;
+                for (Row row : rs) {
+                    last = row.getInteger("id");
+                    searchIndex.put(last, row.getString("title"), row.getString("content"));
+                    titleIndex.put(last, row.getString("title"));
+                }
+                if (rs.size() < INDEX_LOAD_BATCH_SIZE) {
+                    LOGGER.info("Indexed " + searchIndex.size() + " pages for search and " + titleIndex.size() + " titles");
+                    return Future.succeededFuture();
+                }
+                return loadIndexes(last);
+            });
+    }
+
+    /**
+     * Prepares the verticle to handle messages with the given pool; split from {@link #start(Promise)}
+     * so benchmarks can drive the verticle against a stubbed pool.
+     */
+    void setUp(PgPool pool) throws IOException {
+        setUp(pool, List.of());
+    }
+
+    /**
+     * Prepares the verticle with {@code pool} to the primary and pools to read replicas, which only
+     * serve page reads once a health check passed.
+     */
+    void setUp(PgPool pool, List<PgPool> replicas) throws IOException {
         loadSqlQueries();
+        address = config().getString(CONFIG_WIKIDB_QUEUE, "wikidb.queue");
+        WikiCodecs.register(vertx);
+        pageCache = PageCache.shared(vertx, config().getLong(CONFIG_WIKIDB_CACHE_MAX_BYTES, DEFAULT_CACHE_MAX_BYTES));
+        saveBatcher = new SaveBatcher(vertx, config().getLong(CONFIG_WIKIDB_SAVE_BATCH_WINDOW_MS, 20L),
+            config().getInteger(CONFIG_WIKIDB_SAVE_BATCH_MAX_SIZE, 256), this::writePages);
+        searchIndex = SearchIndex.shared(vertx);
+        titleIndex = TitleIndex.shared(vertx);
+        revisionHeads = RevisionHeads.shared(vertx,
+            config().getLong(CONFIG_WIKIDB_REVISIONS_HEADS_MAX_BYTES, DEFAULT_REVISION_HEADS_MAX_BYTES));
+        snapshotInterval = Math.max(1, config().getInteger(CONFIG_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL, 20));
+        dbClient = pool;
 
-        dbClient = PgPool.pool(vertx, new PgConnectOptions()
-            .setPort(5432)
-            .setHost("localhost")
-            .setDatabase("wiki")
-            .setUser("postgres")
-            .setPassword("qwer1234"), new PoolOptions().setMaxSize(5));
-
-        dbClient.getConnection().compose(conn -> {
-            var result = conn.query(sqlQueries.get(SqlQuery.CREATE_PAGES_TABLE)).execute();
-            conn.close();
-            return result;
-        }).onFailure(e -> {
-            LOGGER.error(e.getMessage());
-            promise.fail(e.getCause());
-        }).onSuccess(e -> {
-            vertx.eventBus().consumer(config().getString(CONFIG_WIKIDB_QUEUE, "wikidb.queue"), this::onMessage);
-            promise.complete();
-        });
+        MetricsRegistry metrics = MetricsRegistry.shared(vertx);
+        for (String action : ACTIONS) {
+            actionLatency.put(action, metrics.histogram("wiki_db_action_seconds",
+                "Time to answer a database verticle message, by action", "action", action));
+        }
+        inFlight = metrics.gauge("wiki_db_actions_in_flight", "Database verticle messages being processed");
+        expired = metrics.counter("wiki_db_expired_total", "Messages skipped because their sender had stopped waiting");
+        saveBatcher.registerMetrics(metrics);
+        snapshotRevisions = metrics.counter("wiki_db_revisions_total", "Page revisions stored, by kind", "kind", "snapshot");
+        reads = new SingleFlight(metrics.counter("wiki_db_coalesced_reads_total",
+            "Read requests answered by an identical read already in flight"));
+        deltaRevisions = metrics.counter("wiki_db_revisions_total", "Page revisions stored, by kind", "kind", "delta");
+        recentWrites = RecentWrites.shared(vertx, config().getLong(CONFIG_WIKIDB_REPLICAS_READ_YOUR_WRITES_MS, 2000L));
+        replicaHealth = ReplicaHealth.shared(vertx, replicas.size(),
+            metrics.gauge("wiki_db_replicas_healthy", "Read replicas currently serving page reads"));
+        readRouter = new ReadRouter(pool, replicas, replicaHealth, recentWrites,
+            metrics.counter("wiki_db_page_reads_total", "Page reads sent to Postgres, by pool", "pool", "primary"),
+            metrics.counter("wiki_db_page_reads_total", "Page reads sent to Postgres, by pool", "pool", "replica"),
+            metrics.counter("wiki_db_replica_fallbacks_total", "Page reads retried on the primary after a replica failed them"));
+    }
+
+    @Override
+    public void stop(Promise<Void> promise) {
+        LocalDatabaseService.unregister(vertx, address, this);
+        // Saves are acknowledged only once written, so undeploying waits for every queued one
+        saveBatcher.drain().onComplete(promise);
+    }
+
+    Context context() {
+        return context;
     }
 
-    public void onMessage(Message<JsonObject> message) {
+    @Override
+    public DatabaseService traced(Trace trace) {
+        return this;
+    }
+
+    public void onMessage(Message<Object> message) {
         if (!message.headers().contains("action")) {
-            LOGGER.error(String.format("No action header specified for message with headers %1 and body %2", message.headers(), message.body().encodePrettily()));
+            LOGGER.error(String.format("No action header specified for message with headers %s and body %s", message.headers(), message.body()));
             message.fail(ErrorCode.NO_ACTION_SPECIFIED.ordinal(), "No action header specified");
             return;
         }
 
         String action = message.headers().get("action");
+        if (!actionLatency.containsKey(action)) {
+            message.fail(ErrorCode.BAD_ACTION.ordinal(), "Bad action: " + action);
+            return;
+        }
+
+        String deadline = message.headers().get(DEADLINE_HEADER);
+        long start = System.nanoTime();
+        execute(action, deadline == null ? 0 : Long.parseLong(deadline), () -> dispatch(action, message)).onComplete(ar -> {
+            if (ar.succeeded()) {
+                String traceId = message.headers().get(Trace.ID_HEADER);
+                if (traceId == null) {
+                    message.reply(ar.result());
+                } else {
+                    message.reply(ar.result(), traceReplyOptions(message, traceId, action, start));
+                }
+            } else if (ar.cause() instanceof ReplyException) {
+                message.fail(((ReplyException) ar.cause()).failureCode(), ar.cause().getMessage());
+            } else {
+                message.fail(ErrorCode.DB_ERROR.ordinal(), ar.cause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * Runs a request for {@code action} unless its caller stopped waiting at {@code deadline}, in epoch
+     * milliseconds or 0 for none, and records its latency. Must be called on this verticle's context.
+     */
+    <T> Future<T> execute(String action, long deadline, Supplier<Future<T>> request) {
+        if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+            expired.increment();
+            return Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE,
+                ErrorCode.DEADLINE_EXCEEDED.ordinal(), "Deadline exceeded before " + action + " started"));
+        }
+
+        Histogram latency = actionLatency.get(action);
+        long start = System.nanoTime();
+        inFlight.increment();
+        Future<T> result;
+        try {
+            result = request.get();
+        } catch (RuntimeException e) {
+            result = Future.failedFuture(e);
+        }
+        return result.onComplete(ar -> {
+            inFlight.decrement();
+            latency.recordSince(start);
+            if (ar.failed() && !(ar.cause() instanceof ReplyException)) {
+                LOGGER.error(action + " Database query error " + ar.cause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * Reports the time the message waited in the queue and the time spent answering it to a traced sender.
+     */
+    private DeliveryOptions traceReplyOptions(Message<Object> message, String traceId, String action, long start) {
+        var trace = new Trace(traceId, start);
+        String sentAt = message.headers().get(Trace.SENT_AT_HEADER);
+        if (sentAt != null) {
+            trace.span("db.queue", Long.parseLong(sentAt), start);
+        }
+        trace.spanSince("db." + action, start);
+        return new DeliveryOptions().addHeader(Trace.SPANS_HEADER, trace.encodeSpans());
+    }
 
+    /**
+     * Decodes a message into a call and encodes its result into the reply expected by event bus senders.
+     */
+    private Future<?> dispatch(String action, Message<Object> message) {
+        Object body = message.body();
+        JsonObject json = body instanceof JsonObject ? (JsonObject) body : null;
         switch (action) {
             case "all-pages":
-                fetchAllPages(message);
-                break;
+                return fetchAllPages();
             case "get-page":
-                fetchPage(message);
-                break;
+                return fetchPage(json.getString("page"));
             case "create-page":
-                createPage(message);
-                break;
+                return createPage(((Page) body).title(), ((Page) body).content()).map("ok");
             case "save-page":
-                savePage(message);
-                break;
+                return savePage(((Page) body).id(), ((Page) body).content());
             case "delete-page":
-                deletePage(message);
-                break;
+                return deletePage(json.getInteger("id")).map("ok");
             case "all-pages-data":
-                fetchAllPagesData(message);
-                break;
+                return fetchAllPagesData();
             case "get-page-by-id":
-                fetchPageById(message);
-                break;
+                return fetchPageById(json.getInteger("id"));
+            case "pages-after":
+                return fetchPagesAfter(json.getInteger("after", 0), json.getInteger("limit"), json.getBoolean("content", true));
             case "authenticate":
-                authenticate(message);
-                break;
+                return authenticate(json.getString("username"), json.getString("password")).map(AuthResult::of);
+            case "search":
+                return search(json.getString("q"), json.getInteger("limit", 20));
+            case "titles-by-prefix":
+                return fetchTitlesByPrefix(json.getString("prefix", ""), json.getInteger("limit", 10));
+            case "import-pages":
+                return importPages((PageList) body);
+            case "page-revisions":
+                return fetchPageRevisions(json.getInteger("id"), json.getInteger("before", Integer.MAX_VALUE),
+                    json.getInteger("limit", 50));
+            case "get-page-revision":
+                return fetchPageRevision(json.getInteger("id"), json.getInteger("revision"));
             default:
-                message.fail(ErrorCode.BAD_ACTION.ordinal(), "Bad action: " + action);
+                throw new IllegalStateException(action);
         }
     }
 
-    private void authenticate(Message<JsonObject> message) {
-        String username = message.body().getString("username");
-        String password = message.body().getString("password");
+    /**
+     * Shares the read with identical requests already in flight. The key includes the page cache generation
+     * so a request that arrives after a write never joins a read that may have started before it.
+     */
+    private <T> Future<T> coalesced(String action, String key, Supplier<Future<T>> read) {
+        return reads.run(action + '\0' + key + '\0' + pageCache.generation(), read);
+    }
+
+    @Override
+    public Future<Boolean> authenticate(String username, String password) {
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.AUTHENTICATE)).execute(Tuple.of(username, password))
+            .map(rs -> rs.iterator().next().getLong(0) > 0);
+    }
 
-        dbClient.preparedQuery(sqlQueries.get(SqlQuery.AUTHENTICATE)).execute(Tuple.of(username, password))
-            .onSuccess(rs -> message.reply(new JsonObject().put("found", rs.size() != 0)))
-            .onFailure(e -> reportQueryError(message, e.getMessage()));
+    @Override
+    public Future<Page> fetchPage(String title) {
+        return coalesced("get-page", title, () -> queryPage(title));
     }
 
-    private void fetchPage(Message<JsonObject> message) {
-        String page = message.body().getString("page");
-        dbClient.preparedQuery(sqlQueries.get(SqlQuery.GET_PAGE)).execute(Tuple.of(page)).onSuccess(rs -> {
-            var it = rs.iterator();
-            var response = new JsonObject();
+    private Future<Page> queryPage(String title) {
+        Page cached = pageCache.getByTitle(title);
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+
+        long generation = pageCache.generation();
+        return readRouter.readAny(db -> db.preparedQuery(sqlQueries.get(SqlQuery.GET_PAGE)).execute(Tuple.of(title))).compose(read -> {
+            var it = read.rows().iterator();
             if (!it.hasNext()) {
-                response.put("found", false);
-            } else {
-                response.put("found", true);
-                var row = it.next();
-                response.put("id", row.getInteger(0))
-                    .put("rawContent", row.getString(1));
+                return notFound("There is no page named " + title);
             }
-            message.reply(response);
-        }).onFailure(e -> reportQueryError(message, e.getMessage()));
+            var row = it.next();
+            var page = new Page(row.getInteger(0), title, row.getString(1), read.fromReplica());
+            if (!read.fromReplica()) {
+                pageCache.put(generation, page);
+            }
+            return Future.succeededFuture(page);
+        });
+    }
+
+    @Override
+    public Future<Page> fetchPageById(int id) {
+        return coalesced("get-page-by-id", String.valueOf(id), () -> queryPageById(id));
     }
 
-    private void fetchPageById(Message<JsonObject> message) {
-        dbClient.preparedQuery(sqlQueries.get(SqlQuery.GET_PAGE_BY_ID))
-            .execute(Tuple.of(message.body().getInteger("id")))
-            .onSuccess(rs -> {
-                var it = rs.iterator();
-                var response = new JsonObject();
+    private Future<Page> queryPageById(int id) {
+        Page cached = pageCache.getById(id);
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+
+        long generation = pageCache.generation();
+        return readRouter.readPage(id, db -> db.preparedQuery(sqlQueries.get(SqlQuery.GET_PAGE_BY_ID)).execute(Tuple.of(id)))
+            .compose(read -> {
+                var it = read.rows().iterator();
                 if (!it.hasNext()) {
-                    response.put("found", false);
-                } else {
-                    response.put("found", true);
-                    var row = it.next();
-                    response.put("id", row.getInteger("id"))
-                        .put("title", row.getString("title"))
-                        .put("content", row.getString("content"));
+                    return notFound("There is no page with ID " + id);
                 }
-                message.reply(response);
-            }).onFailure(e -> reportQueryError(message, e.getMessage()));
+                var row = it.next();
+                var page = toPage(row, read.fromReplica());
+                if (read.fromReplica()) {
+                    return Future.succeededFuture(page);
+                }
+                pageCache.put(generation, page);
+                // Revision 0 of pages created before revisions were kept is not stored, so it cannot be a delta base
+                if (row.getInteger("revision") > 0) {
+                    revisionHeads.put(id, row.getInteger("revision"), page.content());
+                }
+                return Future.succeededFuture(page);
+            });
     }
 
-    private void deletePage(Message<JsonObject> message) {
-        dbClient.preparedQuery(sqlQueries.get(SqlQuery.DELETE_PAGE))
-            .execute(Tuple.of(message.body().getInteger("id")))
-            .onSuccess(rs -> message.reply("ok"))
-            .onFailure(e -> reportQueryError(message, e.getMessage()));
+    @Override
+    public Future<Void> deletePage(int id) {
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.DELETE_PAGE))
+            .execute(Tuple.of(id))
+            .map(rs -> {
+                recentWrites.written(id, System.currentTimeMillis());
+                pageCache.invalidate(id);
+                pageCache.invalidateTitles();
+                searchIndex.remove(id);
+                titleIndex.remove(id);
+                revisionHeads.remove(id);
+                return null;
+            });
     }
 
-    private void createPage(Message<JsonObject> message) {
-        JsonObject request = message.body();
-        dbClient.preparedQuery(sqlQueries.get(SqlQuery.CREATE_PAGE))
-            .execute(Tuple.of(request.getString("title"), request.getString("content")))
-            .onSuccess(rs -> message.reply("ok"))
-            .onFailure(e -> {
-                LOGGER.error(Thread.currentThread().getStackTrace()[1].getMethodName() + e.getMessage());
-                message.fail(ErrorCode.DB_ERROR.ordinal(), e.getMessage());
+    @Override
+    public Future<Void> createPage(String title, String content) {
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.CREATE_PAGE))
+            .execute(Tuple.of(title, content))
+            .map(rs -> {
+                pageCache.invalidateTitles();
+                if (rs.iterator().hasNext()) {
+                    int id = rs.iterator().next().getInteger(0);
+                    recentWrites.written(id, System.currentTimeMillis());
+                    searchIndex.put(id, title, content);
+                    titleIndex.put(id, title);
+                    revisionHeads.put(id, 0, content);
+                    snapshotRevisions.increment();
+                }
+                return null;
             });
     }
 
-    private void savePage(Message<JsonObject> message) {
-        JsonObject request = message.body();
-        dbClient.preparedQuery(sqlQueries.get(SqlQuery.SAVE_PAGE))
-            .execute(Tuple.of(request.getString("markdown"), request.getInteger("id")))
-            .onSuccess(rs -> message.reply("ok"))
-            .onFailure(e -> reportQueryError(message, e.getMessage()));
+    /**
+     * Creates the pages in one batch; pages whose title is already taken are skipped.
+     */
+    @Override
+    public Future<JsonObject> importPages(PageList request) {
+        List<Page> pages = request.pages();
+        List<Tuple> batch = new ArrayList<>(pages.size());
+        pages.forEach(page -> batch.add(Tuple.of(page.title(), page.content())));
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.IMPORT_PAGE)).executeBatch(batch).map(rs -> {
+            int imported = 0;
+            int i = 0;
+            for (RowSet<Row> result = rs; result != null; result = result.next(), i++) {
+                for (Row row : result) {
+                    Page page = pages.get(i);
+                    int id = row.getInteger(0);
+                    recentWrites.written(id, System.currentTimeMillis());
+                    searchIndex.put(id, page.title(), page.content());
+                    titleIndex.put(id, page.title());
+                    revisionHeads.put(id, 0, page.content());
+                    imported++;
+                }
+            }
+            pageCache.invalidateTitles();
+            snapshotRevisions.add(imported);
+            return new JsonObject().put("imported", imported).put("skipped", pages.size() - imported);
+        });
+    }
+
+    /**
+     * Queues the save in the batcher of the instance owning the page, so all saves of a page are written in the
+     * order they arrived whichever instance received them.
+     */
+    @Override
+    public Future<SavedPage> savePage(int id, String content) {
+        DatabaseVerticle owner = LocalDatabaseService.owner(vertx, address, id);
+        if (owner == null || owner == this) {
+            return saveBatcher.save(id, content);
+        }
+        Context caller = vertx.getOrCreateContext();
+        Promise<SavedPage> promise = Promise.promise();
+        owner.context().runOnContext(v -> owner.saveBatcher.save(id, content)
+            .onComplete(ar -> caller.runOnContext(done -> promise.handle(ar))));
+        return promise.future();
+    }
+
+    /**
+     * Updates the pages and appends their new revisions in the same statements. A revision is stored as a
+     * delta against the previous one when that is the known head, and as a snapshot when the head is unknown
+     * or every {@code wikidb.revisions.snapshot.interval} revisions, so any revision is rebuilt from a
+     * snapshot and fewer deltas than the interval.
+     */
+    private Future<Map<Integer, SavedPage>> writePages(Map<Integer, String> pages) {
+        List<Tuple> batch = new ArrayList<>(pages.size());
+        Map<Integer, RevisionHeads.Head> heads = new HashMap<>();
+        Map<Integer, RevisionDelta> deltas = new HashMap<>();
+        pages.forEach((id, markdown) -> {
+            RevisionHeads.Head head = revisionHeads.get(id);
+            if (head == null) {
+                batch.add(Tuple.of(markdown, id, -1, 0, 0, "", snapshotInterval));
+            } else {
+                RevisionDelta delta = RevisionDelta.between(head.content(), markdown);
+                heads.put(id, head);
+                deltas.put(id, delta);
+                batch.add(Tuple.of(markdown, id, head.revision(), delta.prefixLength(), delta.suffixLength(),
+                    delta.middle(), snapshotInterval));
+            }
+        });
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.SAVE_PAGE)).executeBatch(batch).map(rs -> {
+            Map<Integer, SavedPage> saved = new HashMap<>();
+            pages.keySet().forEach(id -> saved.put(id, new SavedPage(-1, null, null)));
+            for (RowSet<Row> result = rs; result != null; result = result.next()) {
+                for (Row row : result) {
+                    int id = row.getInteger(0);
+                    int revision = row.getInteger(1);
+                    revisionHeads.put(id, revision, pages.get(id));
+                    (row.getBoolean(2) ? snapshotRevisions : deltaRevisions).increment();
+                    // The delta is only against the replaced revision if the head was still current
+                    RevisionHeads.Head head = heads.get(id);
+                    saved.put(id, head != null && head.revision() == revision - 1
+                        ? new SavedPage(revision, head.content(), deltas.get(id))
+                        : new SavedPage(revision, null, null));
+                }
+            }
+            long now = System.currentTimeMillis();
+            pages.forEach((id, markdown) -> {
+                recentWrites.written(id, now);
+                pageCache.invalidate(id);
+                searchIndex.updateContent(id, markdown);
+            });
+            return saved;
+        });
     }
 
-    private void fetchAllPages(Message<JsonObject> message) {
-        dbClient.query(sqlQueries.get(SqlQuery.ALL_PAGES)).execute().onSuccess(rs -> {
-            final List<String> pages = new ArrayList<>();
-            rs.forEach(row -> pages.add(row.getString("title")));
-            message.reply(new JsonObject().put("pages", new JsonArray(pages)));
-        }).onFailure(e -> reportQueryError(message, e.getMessage()));
+    @Override
+    public Future<PageList> fetchAllPages() {
+        return coalesced("all-pages", "", this::queryAllPages);
+    }
+
+    private Future<PageList> queryAllPages() {
+        PageList cached = pageCache.titles();
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+
+        long generation = pageCache.generation();
+        return readRouter.readAny(db -> db.query(sqlQueries.get(SqlQuery.ALL_PAGES)).execute()).map(read -> {
+            final List<Page> pages = new ArrayList<>();
+            read.rows().forEach(row -> pages.add(new Page(row.getInteger("id"), row.getString("title"), null,
+                read.fromReplica())));
+            var titles = new PageList(pages);
+            if (!read.fromReplica()) {
+                pageCache.putTitles(generation, titles);
+            }
+            return titles;
+        });
+    }
+
+    @Override
+    public Future<PageList> fetchAllPagesData() {
+        return readRouter.readAny(db -> db.query(sqlQueries.get(SqlQuery.ALL_PAGES_DATA)).execute()).map(read -> {
+            final List<Page> pages = new ArrayList<>(read.rows().size());
+            read.rows().forEach(row -> pages.add(toPage(row, read.fromReplica())));
+            return new PageList(pages);
+        });
+    }
+
+    @Override
+    public Future<PageList> fetchPagesAfter(int after, int limit, boolean withContent) {
+        return coalesced("pages-after", after + ":" + limit + ":" + withContent,
+            () -> queryPagesAfter(after, limit, withContent));
+    }
+
+    private Future<PageList> queryPagesAfter(int after, int limit, boolean withContent) {
+        SqlQuery query = withContent ? SqlQuery.PAGES_AFTER : SqlQuery.PAGE_TITLES_AFTER;
+
+        return readRouter.readAny(db -> db.preparedQuery(sqlQueries.get(query)).execute(Tuple.of(after, limit)))
+            .map(read -> {
+                final List<Page> pages = new ArrayList<>(read.rows().size());
+                read.rows().forEach(row -> pages.add(new Page(row.getInteger("id"), row.getString("title"),
+                    withContent ? row.getString("content") : null, read.fromReplica())));
+                Integer next = pages.size() < limit ? null : pages.get(pages.size() - 1).id();
+                return new PageList(pages, next);
+            });
+    }
+
+    @Override
+    public Future<PageList> search(String query, int limit) {
+        int capped = Math.min(limit, config().getInteger(CONFIG_WIKIDB_SEARCH_MAX_LIMIT, 100));
+        return Future.succeededFuture(new PageList(searchIndex.search(query, capped)));
+    }
+
+    @Override
+    public Future<PageList> fetchTitlesByPrefix(String prefix, int limit) {
+        int capped = Math.min(limit, config().getInteger(CONFIG_WIKIDB_TITLES_MAX_LIMIT, 100));
+        return Future.succeededFuture(new PageList(titleIndex.startingWith(prefix, capped)));
+    }
+
+    @Override
+    public Future<JsonArray> fetchPageRevisions(int id, int before, int limit) {
+        int capped = Math.min(limit, config().getInteger(CONFIG_WIKIDB_REVISIONS_MAX_LIMIT, 100));
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.PAGE_REVISIONS))
+            .execute(Tuple.of(id, before, capped))
+            .map(rs -> {
+                var revisions = new JsonArray();
+                rs.forEach(row -> revisions.add(new JsonObject()
+                    .put("revision", row.getInteger("revision"))
+                    .put("snapshot", row.getBoolean("snapshot"))
+                    .put("created", row.getOffsetDateTime("created").toString())));
+                return revisions;
+            });
+    }
+
+    /**
+     * Rebuilds a revision from the closest snapshot at or before it and the deltas that follow.
+     */
+    @Override
+    public Future<JsonObject> fetchPageRevision(int id, int revision) {
+        return dbClient.preparedQuery(sqlQueries.get(SqlQuery.PAGE_REVISION))
+            .execute(Tuple.of(id, revision))
+            .compose(rs -> {
+                String content = null;
+                Row last = null;
+                for (Row row : rs) {
+                    content = row.getInteger("prefixlength") == null ? row.getString("content")
+                        : new RevisionDelta(row.getInteger("prefixlength"), row.getInteger("suffixlength"),
+                        row.getString("content")).applyTo(content);
+                    last = row;
+                }
+                if (last == null || last.getInteger("revision") != revision) {
+                    return notFound("There is no revision " + revision + " of page " + id);
+                }
+                return Future.succeededFuture(new JsonObject()
+                    .put("id", id)
+                    .put("revision", revision)
+                    .put("created", last.getOffsetDateTime("created").toString())
+                    .put("content", content));
+            });
     }
 
-    private void fetchAllPagesData(Message<JsonObject> message) {
-        dbClient.query(sqlQueries.get(SqlQuery.ALL_PAGES_DATA)).execute().onSuccess(rs -> {
-            var it = rs.iterator();
-            var pages = new JsonArray();
-            rs.forEach(row -> pages.add(
-                new JsonObject()
-                    .put("id", row.getInteger("id"))
-                    .put("title", row.getString("title"))
-                    .put("content", row.getString("content"))
-            ));
-            message.reply(pages);
-        }).onFailure(e -> reportQueryError(message, e.getMessage()));
+    private Page toPage(Row row, boolean fromReplica) {
+        return new Page(row.getInteger("id"), row.getString("title"), row.getString("content"), fromReplica);
     }
 
-    private void reportQueryError(Message<JsonObject> message, String error) {
-        LOGGER.error(Thread.currentThread().getStackTrace()[2].getMethodName() + " Database query error " + error);
-        message.fail(ErrorCode.DB_ERROR.ordinal(), error);
+    private static <T> Future<T> notFound(String error) {
+        return Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, ErrorCode.NOT_FOUND.ordinal(), error));
     }
 }
@@ -4,4 +4,6 @@ public enum ErrorCode {
     NO_ACTION_SPECIFIED,
     BAD_ACTION,
     DB_ERROR,
+    NOT_FOUND,
+    DEADLINE_EXCEEDED,
 }
@@ -0,0 +1,124 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.tracing.Trace;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.function.Function;
+
+/**
+ * {@link DatabaseService} sending each call as a message to the database verticles' queue, which also
+ * reaches verticles of other cluster members.
+ */
+class EventBusDatabaseService implements DatabaseService {
+    private final Vertx vertx;
+    private final String address;
+    private final long timeoutMs;
+    private final Trace trace;
+
+    EventBusDatabaseService(Vertx vertx, String address, long timeoutMs, Trace trace) {
+        this.vertx = vertx;
+        this.address = address;
+        this.timeoutMs = timeoutMs;
+        this.trace = trace;
+    }
+
+    @Override
+    public DatabaseService traced(Trace trace) {
+        return new EventBusDatabaseService(vertx, address, timeoutMs, trace);
+    }
+
+    @Override
+    public Future<PageList> fetchAllPages() {
+        return request("all-pages", new JsonObject(), PageList.class::cast);
+    }
+
+    @Override
+    public Future<PageList> fetchAllPagesData() {
+        return request("all-pages-data", new JsonObject(), PageList.class::cast);
+    }
+
+    @Override
+    public Future<Page> fetchPage(String title) {
+        return request("get-page", new JsonObject().put("page", title), Page.class::cast);
+    }
+
+    @Override
+    public Future<Page> fetchPageById(int id) {
+        return request("get-page-by-id", new JsonObject().put("id", id), Page.class::cast);
+    }
+
+    @Override
+    public Future<PageList> fetchPagesAfter(int after, int limit, boolean withContent) {
+        return request("pages-after", new JsonObject().put("after", after).put("limit", limit).put("content", withContent),
+            PageList.class::cast);
+    }
+
+    @Override
+    public Future<Void> createPage(String title, String content) {
+        return request("create-page", new Page(0, title, content), reply -> null);
+    }
+
+    @Override
+    public Future<SavedPage> savePage(int id, String content) {
+        return request("save-page", new Page(id, null, content), SavedPage.class::cast);
+    }
+
+    @Override
+    public Future<Void> deletePage(int id) {
+        return request("delete-page", new JsonObject().put("id", id), reply -> null);
+    }
+
+    @Override
+    public Future<JsonObject> importPages(PageList pages) {
+        return request("import-pages", pages, JsonObject.class::cast);
+    }
+
+    @Override
+    public Future<Boolean> authenticate(String username, String password) {
+        return request("authenticate", new JsonObject().put("username", username).put("password", password),
+            reply -> ((AuthResult) reply).found());
+    }
+
+    @Override
+    public Future<PageList> search(String query, int limit) {
+        return request("search", new JsonObject().put("q", query).put("limit", limit), PageList.class::cast);
+    }
+
+    @Override
+    public Future<PageList> fetchTitlesByPrefix(String prefix, int limit) {
+        return request("titles-by-prefix", new JsonObject().put("prefix", prefix).put("limit", limit),
+            PageList.class::cast);
+    }
+
+    @Override
+    public Future<JsonArray> fetchPageRevisions(int id, int before, int limit) {
+        return request("page-revisions", new JsonObject().put("id", id).put("before", before).put("limit", limit),
+            JsonArray.class::cast);
+    }
+
+    @Override
+    public Future<JsonObject> fetchPageRevision(int id, int revision) {
+        return request("get-page-revision", new JsonObject().put("id", id).put("revision", revision),
+            JsonObject.class::cast);
+    }
+
+    private <T> Future<T> request(String action, Object body, Function<Object, T> reply) {
+        long start = System.nanoTime();
+        var options = new DeliveryOptions().setSendTimeout(timeoutMs)
+            .addHeader("action", action)
+            .addHeader(DatabaseVerticle.DEADLINE_HEADER, String.valueOf(System.currentTimeMillis() + timeoutMs));
+        if (trace != null) {
+            options.addHeader(Trace.ID_HEADER, trace.id()).addHeader(Trace.SENT_AT_HEADER, String.valueOf(start));
+        }
+        return vertx.eventBus().request(address, body, options).map(message -> {
+            if (trace != null) {
+                trace.decodeSpans(message.headers().get(Trace.SPANS_HEADER));
+            }
+            return reply.apply(message.body());
+        });
+    }
+}
@@ -0,0 +1,213 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.tracing.Trace;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * {@link DatabaseService} calling the database verticles deployed in this Vert.x instance directly, in turn:
+ * each call runs on the chosen verticle's event loop and its result is handed back on the caller's context.
+ * Falls back to the event bus while no verticle has registered for the address.
+ */
+class LocalDatabaseService implements DatabaseService {
+    private static final String LOCAL_MAP_NAME = "wikidb.local.services";
+
+    private final Vertx vertx;
+    private final long timeoutMs;
+    private final Trace trace;
+    private final Instances instances;
+    private final DatabaseService fallback;
+
+    LocalDatabaseService(Vertx vertx, String address, long timeoutMs, Trace trace) {
+        this(vertx, timeoutMs, trace, instances(vertx, address), new EventBusDatabaseService(vertx, address, timeoutMs, trace));
+    }
+
+    private LocalDatabaseService(Vertx vertx, long timeoutMs, Trace trace, Instances instances, DatabaseService fallback) {
+        this.vertx = vertx;
+        this.timeoutMs = timeoutMs;
+        this.trace = trace;
+        this.instances = instances;
+        this.fallback = fallback;
+    }
+
+    static void register(Vertx vertx, String address, DatabaseVerticle verticle) {
+        instances(vertx, address).verticles.add(verticle);
+    }
+
+    static void unregister(Vertx vertx, String address, DatabaseVerticle verticle) {
+        instances(vertx, address).verticles.remove(verticle);
+    }
+
+    /**
+     * The verticle of this Vert.x instance whose batcher writes every save of page {@code id}, null if none is
+     * registered for the address.
+     */
+    static DatabaseVerticle owner(Vertx vertx, String address, int id) {
+        return instances(vertx, address).owner(id);
+    }
+
+    private static Instances instances(Vertx vertx, String address) {
+        LocalMap<String, Instances> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(address, k -> new Instances());
+    }
+
+    @Override
+    public DatabaseService traced(Trace trace) {
+        return new LocalDatabaseService(vertx, timeoutMs, trace, instances, fallback.traced(trace));
+    }
+
+    @Override
+    public Future<PageList> fetchAllPages() {
+        return call("all-pages", DatabaseService::fetchAllPages);
+    }
+
+    @Override
+    public Future<PageList> fetchAllPagesData() {
+        return call("all-pages-data", DatabaseService::fetchAllPagesData);
+    }
+
+    @Override
+    public Future<Page> fetchPage(String title) {
+        return call("get-page", service -> service.fetchPage(title));
+    }
+
+    @Override
+    public Future<Page> fetchPageById(int id) {
+        return call("get-page-by-id", service -> service.fetchPageById(id));
+    }
+
+    @Override
+    public Future<PageList> fetchPagesAfter(int after, int limit, boolean withContent) {
+        return call("pages-after", service -> service.fetchPagesAfter(after, limit, withContent));
+    }
+
+    @Override
+    public Future<Void> createPage(String title, String content) {
+        return call("create-page", service -> service.createPage(title, content));
+    }
+
+    @Override
+    public Future<SavedPage> savePage(int id, String content) {
+        return call("save-page", instances.owner(id), service -> service.savePage(id, content));
+    }
+
+    @Override
+    public Future<Void> deletePage(int id) {
+        return call("delete-page", service -> service.deletePage(id));
+    }
+
+    @Override
+    public Future<JsonObject> importPages(PageList pages) {
+        return call("import-pages", service -> service.importPages(pages));
+    }
+
+    @Override
+    public Future<Boolean> authenticate(String username, String password) {
+        return call("authenticate", service -> service.authenticate(username, password));
+    }
+
+    @Override
+    public Future<PageList> search(String query, int limit) {
+        return call("search", service -> service.search(query, limit));
+    }
+
+    @Override
+    public Future<PageList> fetchTitlesByPrefix(String prefix, int limit) {
+        return call("titles-by-prefix", service -> service.fetchTitlesByPrefix(prefix, limit));
+    }
+
+    @Override
+    public Future<JsonArray> fetchPageRevisions(int id, int before, int limit) {
+        return call("page-revisions", service -> service.fetchPageRevisions(id, before, limit));
+    }
+
+    @Override
+    public Future<JsonObject> fetchPageRevision(int id, int revision) {
+        return call("get-page-revision", service -> service.fetchPageRevision(id, revision));
+    }
+
+    /**
+     * Runs {@code request} on the next verticle's context with the same deadline, timeout and trace spans
+     * as a message would get.
+     */
+    private <T> Future<T> call(String action, Function<DatabaseService, Future<T>> request) {
+        return call(action, instances.next(), request);
+    }
+
+    private <T> Future<T> call(String action, DatabaseVerticle verticle, Function<DatabaseService, Future<T>> request) {
+        if (verticle == null) {
+            return request.apply(fallback);
+        }
+
+        Context caller = vertx.getOrCreateContext();
+        Promise<T> promise = Promise.promise();
+        long sent = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long timer = vertx.setTimer(timeoutMs, t -> promise.tryFail(new ReplyException(ReplyFailure.TIMEOUT,
+            "Timed out after waiting " + timeoutMs + "(ms) for " + action)));
+        verticle.context().runOnContext(v -> {
+            long start = System.nanoTime();
+            verticle.execute(action, deadline, () -> request.apply(verticle)).onComplete(ar -> {
+                long end = System.nanoTime();
+                caller.runOnContext(done -> {
+                    vertx.cancelTimer(timer);
+                    if (trace != null) {
+                        trace.span("db.queue", sent, start);
+                        trace.span("db." + action, start, end);
+                    }
+                    if (ar.succeeded()) {
+                        promise.tryComplete(ar.result());
+                    } else {
+                        promise.tryFail(ar.cause());
+                    }
+                });
+            });
+        });
+        return promise.future();
+    }
+
+    private static final class Instances implements Shareable {
+        private final List<DatabaseVerticle> verticles = new CopyOnWriteArrayList<>();
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        DatabaseVerticle next() {
+            List<DatabaseVerticle> current = verticles;
+            int size = current.size();
+            if (size == 0) {
+                return null;
+            }
+            try {
+                return current.get(Math.floorMod(cursor.getAndIncrement(), size));
+            } catch (IndexOutOfBoundsException e) {
+                // A verticle was undeployed meanwhile
+                return next();
+            }
+        }
+
+        DatabaseVerticle owner(int id) {
+            List<DatabaseVerticle> current = verticles;
+            int size = current.size();
+            if (size == 0) {
+                return null;
+            }
+            try {
+                return current.get(Math.floorMod(id, size));
+            } catch (IndexOutOfBoundsException e) {
+                return owner(id);
+            }
+        }
+    }
+}
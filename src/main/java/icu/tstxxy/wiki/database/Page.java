@@ -0,0 +1,50 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Immutable page row. Sent over the event bus by reference, see {@link WikiCodecs}.
+ * <p>
+ * A page read from a replica may be behind the primary, so it must not fill any cache.
+ */
+public final class Page {
+    private final int id;
+    private final String title;
+    private final String content;
+    private final boolean fromReplica;
+
+    public Page(int id, String title, String content) {
+        this(id, title, content, false);
+    }
+
+    public Page(int id, String title, String content, boolean fromReplica) {
+        this.id = id;
+        this.title = title;
+        this.content = content;
+        this.fromReplica = fromReplica;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String title() {
+        return title;
+    }
+
+    public String content() {
+        return content;
+    }
+
+    public boolean fromReplica() {
+        return fromReplica;
+    }
+
+    public JsonObject toJson() {
+        var json = new JsonObject().put("id", id).put("title", title);
+        if (content != null) {
+            json.put("content", content);
+        }
+        return json;
+    }
+}
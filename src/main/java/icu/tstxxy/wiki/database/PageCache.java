@@ -0,0 +1,103 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Read-through cache of page rows and of the title list, bounded by an approximate byte budget.
+ * <p>
+ * Reads take a {@link #generation()} before querying and only fill the cache if no write was
+ * invalidated in the meantime, so a slow read can never resurrect a row that a write already replaced.
+ */
+public class PageCache implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wikidb.page.cache";
+
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<>(64, 0.75f, true);
+    private final HashMap<String, Integer> idsByTitle = new HashMap<>();
+    private PageList titles;
+    private long bytes;
+    private long generation;
+
+    public PageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static PageCache shared(Vertx vertx, long maxBytes) {
+        LocalMap<String, PageCache> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new PageCache(maxBytes));
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized Page getById(int id) {
+        return pages.get(id);
+    }
+
+    public synchronized Page getByTitle(String title) {
+        Integer id = idsByTitle.get(title);
+        return id == null ? null : pages.get(id);
+    }
+
+    public synchronized PageList titles() {
+        return titles;
+    }
+
+    public synchronized void put(long expectedGeneration, Page page) {
+        if (expectedGeneration != generation) {
+            return;
+        }
+        long weight = weigh(page);
+        if (weight > maxBytes) {
+            return;
+        }
+        Page previous = pages.put(page.id(), page);
+        if (previous != null) {
+            bytes -= weigh(previous);
+            idsByTitle.remove(previous.title());
+        }
+        idsByTitle.put(page.title(), page.id());
+        bytes += weight;
+
+        Iterator<Page> it = pages.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Page evicted = it.next();
+            it.remove();
+            idsByTitle.remove(evicted.title());
+            bytes -= weigh(evicted);
+        }
+    }
+
+    public synchronized void putTitles(long expectedGeneration, PageList titles) {
+        if (expectedGeneration == generation) {
+            this.titles = titles;
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        generation++;
+        Page removed = pages.remove(id);
+        if (removed != null) {
+            idsByTitle.remove(removed.title());
+            bytes -= weigh(removed);
+        }
+    }
+
+    public synchronized void invalidateTitles() {
+        generation++;
+        titles = null;
+    }
+
+    private static long weigh(Page page) {
+        long chars = (page.title() == null ? 0 : page.title().length())
+            + (page.content() == null ? 0 : page.content().length());
+        return 2 * chars + 96;
+    }
+}
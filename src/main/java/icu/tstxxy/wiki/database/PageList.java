@@ -0,0 +1,38 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.json.JsonArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable list of pages, with the keyset cursor of the next slice when the list is one slice of a listing.
+ */
+public final class PageList {
+    private final List<Page> pages;
+    private final Integer next;
+
+    public PageList(List<Page> pages) {
+        this(pages, null);
+    }
+
+    public PageList(List<Page> pages, Integer next) {
+        this.pages = Collections.unmodifiableList(new ArrayList<>(pages));
+        this.next = next;
+    }
+
+    public List<Page> pages() {
+        return pages;
+    }
+
+    public Integer next() {
+        return next;
+    }
+
+    public JsonArray toJson() {
+        var json = new JsonArray();
+        pages.forEach(page -> json.add(page.toJson()));
+        return json;
+    }
+}
@@ -0,0 +1,147 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Chooses the pool answering each page read of a database verticle: the healthy read replicas in turn, or the
+ * primary for pages in {@link RecentWrites}, while no replica is healthy, and again when a replica fails the
+ * query. A replica is healthy from its first successful check until a check or a read fails or reports it more
+ * than {@code maxLagMs} behind the primary. Each {@link Read} tells whether a replica answered it, as such rows
+ * may be stale and must not fill the caches shared with primary reads. The health of the replicas is the
+ * {@link ReplicaHealth} shared by the routers of this process.
+ * <p>
+ * Must be used from the owning verticle's event loop.
+ */
+class ReadRouter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadRouter.class);
+
+    private final Pool primary;
+    private final List<? extends Pool> replicas;
+    private final ReplicaHealth health;
+    private final RecentWrites recentWrites;
+    private final Counter primaryReads;
+    private final Counter replicaReads;
+    private final Counter fallbacks;
+    private int cursor;
+
+    ReadRouter(Pool primary, List<? extends Pool> replicas, ReplicaHealth health, RecentWrites recentWrites,
+               Counter primaryReads, Counter replicaReads, Counter fallbacks) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.health = health;
+        this.recentWrites = recentWrites;
+        this.primaryReads = primaryReads;
+        this.replicaReads = replicaReads;
+        this.fallbacks = fallbacks;
+    }
+
+    /**
+     * Reads a single page with {@code query}.
+     */
+    Future<Read> readPage(int id, Function<SqlClient, Future<RowSet<Row>>> query) {
+        return read(recentWrites.isRecent(id, System.currentTimeMillis()) ? -1 : nextHealthy(), query);
+    }
+
+    /**
+     * Reads any number of pages, or a page by title, with {@code query}.
+     */
+    Future<Read> readAny(Function<SqlClient, Future<RowSet<Row>>> query) {
+        return read(recentWrites.anyRecent(System.currentTimeMillis()) ? -1 : nextHealthy(), query);
+    }
+
+    private Future<Read> read(int replica, Function<SqlClient, Future<RowSet<Row>>> query) {
+        if (replica < 0) {
+            primaryReads.increment();
+            return query.apply(primary).map(rows -> new Read(rows, false));
+        }
+        replicaReads.increment();
+        return query.apply(replicas.get(replica)).map(rows -> new Read(rows, true)).recover(e -> {
+            LOGGER.warn("Read replica " + replica + " failed a read, retrying on the primary: " + e.getMessage());
+            markHealthy(replica, false);
+            fallbacks.increment();
+            primaryReads.increment();
+            return query.apply(primary).map(rows -> new Read(rows, false));
+        });
+    }
+
+    /**
+     * Index of the next healthy replica in turn, -1 if there is none.
+     */
+    int nextHealthy() {
+        for (int i = 0; i < replicas.size(); i++) {
+            int replica = cursor;
+            cursor = (cursor + 1) % replicas.size();
+            if (health.isHealthy(replica)) {
+                return replica;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a heartbeat on the primary with {@code heartbeatQuery}, then runs {@code lagQuery}, answering how
+     * long ago the last replicated heartbeat was written in milliseconds, on every replica and updates their health
+     * from the results. Unlike comparing a replica's received and replayed WAL positions, this also catches a
+     * replica whose WAL receiver has lost the primary.
+     */
+    void checkHealth(String heartbeatQuery, String lagQuery, long maxLagMs) {
+        primary.query(heartbeatQuery).execute().onComplete(heartbeat -> {
+            if (heartbeat.failed()) {
+                LOGGER.warn("Could not write the replica heartbeat: " + heartbeat.cause().getMessage());
+            }
+            for (int i = 0; i < replicas.size(); i++) {
+                int replica = i;
+                replicas.get(i).query(lagQuery).execute().onComplete(ar -> {
+                    if (ar.failed()) {
+                        LOGGER.warn("Read replica " + replica + " failed its health check: " + ar.cause().getMessage());
+                        markHealthy(replica, false);
+                        return;
+                    }
+                    // No row until the first heartbeat has been replicated
+                    var it = ar.result().iterator();
+                    Long lag = it.hasNext() ? it.next().getLong(0) : null;
+                    boolean caughtUp = lag != null && lag <= maxLagMs;
+                    if (!caughtUp && health.isHealthy(replica)) {
+                        LOGGER.warn("Read replica " + replica + " is " + lag + "ms behind the primary");
+                    }
+                    markHealthy(replica, caughtUp);
+                });
+            }
+        });
+    }
+
+    void markHealthy(int replica, boolean value) {
+        health.markHealthy(replica, value);
+    }
+
+    /**
+     * Rows answering a read, and whether a replica rather than the primary answered it.
+     */
+    static final class Read {
+        private final RowSet<Row> rows;
+        private final boolean fromReplica;
+
+        Read(RowSet<Row> rows, boolean fromReplica) {
+            this.rows = rows;
+            this.fromReplica = fromReplica;
+        }
+
+        RowSet<Row> rows() {
+            return rows;
+        }
+
+        boolean fromReplica() {
+            return fromReplica;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Pages written by this process within the last {@code windowMs}, whose reads go to the primary until the read
+ * replicas have caught up, so the client that saved a page reads its own write back. Lists and lookups by
+ * title may include any page, so they go to the primary while any page was written within the window.
+ */
+public class RecentWrites implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wikidb.recent.writes";
+
+    private final long windowMs;
+    // In expiry order, the window being the same for every page
+    private final LinkedHashMap<Integer, Long> expiries = new LinkedHashMap<>();
+    private long lastExpiry;
+
+    public RecentWrites(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    public static RecentWrites shared(Vertx vertx, long windowMs) {
+        LocalMap<String, RecentWrites> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new RecentWrites(windowMs));
+    }
+
+    public synchronized void written(int id, long now) {
+        long expiry = now + windowMs;
+        expiries.remove(id);
+        expiries.put(id, expiry);
+        lastExpiry = Math.max(lastExpiry, expiry);
+
+        Iterator<Long> it = expiries.values().iterator();
+        while (it.hasNext() && it.next() <= now) {
+            it.remove();
+        }
+    }
+
+    public synchronized boolean isRecent(int id, long now) {
+        Long expiry = expiries.get(id);
+        return expiry != null && expiry > now;
+    }
+
+    public synchronized boolean anyRecent(long now) {
+        return lastExpiry > now;
+    }
+
+    synchronized int size() {
+        return expiries.size();
+    }
+}
@@ -0,0 +1,57 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Health of the read replicas, shared by the database verticles of this process so each replica is checked and
+ * counted in {@code healthyReplicas} once rather than once per instance. Every instance schedules the check, and
+ * the first one due in each interval {@linkplain #claimCheck(long, long) claims} it, so the checks go on while any
+ * instance is deployed.
+ */
+public class ReplicaHealth implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wikidb.replica.health";
+
+    private final boolean[] healthy;
+    private final Counter healthyReplicas;
+    private long lastCheck = Long.MIN_VALUE;
+
+    public ReplicaHealth(int replicas, Counter healthyReplicas) {
+        this.healthy = new boolean[replicas];
+        this.healthyReplicas = healthyReplicas;
+    }
+
+    public static ReplicaHealth shared(Vertx vertx, int replicas, Counter healthyReplicas) {
+        LocalMap<String, ReplicaHealth> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new ReplicaHealth(replicas, healthyReplicas));
+    }
+
+    public synchronized int size() {
+        return healthy.length;
+    }
+
+    public synchronized boolean isHealthy(int replica) {
+        return healthy[replica];
+    }
+
+    public synchronized void markHealthy(int replica, boolean value) {
+        if (healthy[replica] != value) {
+            healthy[replica] = value;
+            healthyReplicas.add(value ? 1 : -1);
+        }
+    }
+
+    /**
+     * Whether the caller should run the check due at {@code now}, no other caller having run one within the last
+     * {@code intervalMs}.
+     */
+    public synchronized boolean claimCheck(long now, long intervalMs) {
+        if (lastCheck != Long.MIN_VALUE && now - lastCheck < intervalMs) {
+            return false;
+        }
+        lastCheck = now;
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package icu.tstxxy.wiki.database;
+
+/**
+ * Difference between two consecutive revisions of a page: the lengths of the prefix and suffix they have in
+ * common and the text that replaces everything in between. Editing a wiki page usually touches one region,
+ * so this is a fraction of the page while applying it is a single copy.
+ */
+public final class RevisionDelta {
+    private final int prefixLength;
+    private final int suffixLength;
+    private final String middle;
+
+    public RevisionDelta(int prefixLength, int suffixLength, String middle) {
+        this.prefixLength = prefixLength;
+        this.suffixLength = suffixLength;
+        this.middle = middle;
+    }
+
+    public static RevisionDelta between(String previous, String next) {
+        int max = Math.min(previous.length(), next.length());
+        int prefix = 0;
+        while (prefix < max && previous.charAt(prefix) == next.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+            && previous.charAt(previous.length() - 1 - suffix) == next.charAt(next.length() - 1 - suffix)) {
+            suffix++;
+        }
+        // Never split a surrogate pair, the middle is stored as text on its own
+        if (prefix > 0 && Character.isHighSurrogate(next.charAt(prefix - 1))) {
+            prefix--;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(next.charAt(next.length() - suffix))) {
+            suffix--;
+        }
+        return new RevisionDelta(prefix, suffix, next.substring(prefix, next.length() - suffix));
+    }
+
+    public String applyTo(String previous) {
+        return new StringBuilder(prefixLength + middle.length() + suffixLength)
+            .append(previous, 0, prefixLength)
+            .append(middle)
+            .append(previous, previous.length() - suffixLength, previous.length())
+            .toString();
+    }
+
+    public int prefixLength() {
+        return prefixLength;
+    }
+
+    public int suffixLength() {
+        return suffixLength;
+    }
+
+    public String middle() {
+        return middle;
+    }
+}
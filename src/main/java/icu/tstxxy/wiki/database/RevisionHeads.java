@@ -0,0 +1,91 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Latest known revision number and content of recently saved or read pages, bounded by an approximate byte
+ * budget, so a save can be stored as a delta against the revision it replaces without reading it first.
+ * <p>
+ * An entry may be stale; the save statement only keeps the delta when the revision it replaces is the one
+ * the delta was computed against and stores a snapshot otherwise.
+ */
+public class RevisionHeads implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wikidb.revision.heads";
+
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, Head> heads = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    public RevisionHeads(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static RevisionHeads shared(Vertx vertx, long maxBytes) {
+        LocalMap<String, RevisionHeads> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new RevisionHeads(maxBytes));
+    }
+
+    public synchronized Head get(int id) {
+        return heads.get(id);
+    }
+
+    /**
+     * Records {@code content} as revision {@code revision} of the page unless a later revision is already known.
+     */
+    public synchronized void put(int id, int revision, String content) {
+        Head current = heads.get(id);
+        if (current != null && current.revision >= revision) {
+            return;
+        }
+        long weight = weigh(content);
+        if (weight > maxBytes) {
+            remove(id);
+            return;
+        }
+        Head previous = heads.put(id, new Head(revision, content));
+        if (previous != null) {
+            bytes -= weigh(previous.content);
+        }
+        bytes += weight;
+
+        Iterator<Head> it = heads.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= weigh(it.next().content);
+            it.remove();
+        }
+    }
+
+    public synchronized void remove(int id) {
+        Head removed = heads.remove(id);
+        if (removed != null) {
+            bytes -= weigh(removed.content);
+        }
+    }
+
+    private static long weigh(String content) {
+        return 2L * content.length() + 64;
+    }
+
+    public static final class Head {
+        private final int revision;
+        private final String content;
+
+        Head(int revision, String content) {
+            this.revision = revision;
+            this.content = content;
+        }
+
+        public int revision() {
+            return revision;
+        }
+
+        public String content() {
+            return content;
+        }
+    }
+}
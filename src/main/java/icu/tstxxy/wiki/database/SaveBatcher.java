@@ -0,0 +1,160 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import icu.tstxxy.wiki.metrics.MetricsRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Write-behind stage for page saves. Saves of the same page that arrive within one window are
+ * coalesced (last write wins) and the remaining pages are handed to the writer as a single batch.
+ * Every caller is completed once the batch carrying its write has been committed: the last save of each page
+ * with what the writer answered for it, the saves it replaced with {@link SavedPage#SUPERSEDED}.
+ * <p>
+ * At most one batch is in flight at a time so two saves of the same page can never be reordered.
+ * Must be used from the owning verticle's event loop.
+ */
+public class SaveBatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SaveBatcher.class);
+
+    private final Vertx vertx;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final Function<Map<Integer, String>, Future<Map<Integer, SavedPage>>> writer;
+
+    private LinkedHashMap<Integer, PendingSave> pending = new LinkedHashMap<>();
+    private long timerId = -1;
+    private boolean flushing;
+    private final List<Promise<Void>> drainWaiters = new ArrayList<>();
+
+    private Counter requests = new Counter();
+    private Counter writes = new Counter();
+
+    public SaveBatcher(Vertx vertx, long windowMs, int maxBatchSize,
+                       Function<Map<Integer, String>, Future<Map<Integer, SavedPage>>> writer) {
+        this.vertx = vertx;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.writer = writer;
+    }
+
+    public Future<SavedPage> save(int id, String markdown) {
+        requests.increment();
+        Promise<SavedPage> promise = Promise.promise();
+        pending.computeIfAbsent(id, k -> new PendingSave()).update(markdown, promise);
+
+        if (pending.size() >= maxBatchSize) {
+            cancelTimer();
+            flush();
+        } else if (timerId == -1 && !flushing) {
+            timerId = vertx.setTimer(Math.max(1, windowMs), t -> {
+                timerId = -1;
+                flush();
+            });
+        }
+        return promise.future();
+    }
+
+    public void flush() {
+        if (flushing || pending.isEmpty()) {
+            return;
+        }
+        flushing = true;
+        LinkedHashMap<Integer, PendingSave> batch = pending;
+        pending = new LinkedHashMap<>();
+
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        batch.forEach((id, save) -> pages.put(id, save.markdown));
+        writes.add(pages.size());
+
+        writer.apply(pages).onComplete(ar -> {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Flushed %d page writes, coalescing ratio %.2f", pages.size(), coalescingRatio()));
+            }
+            batch.forEach((id, save) -> save.complete(ar.map(saved -> saved.get(id))));
+            flushing = false;
+            if (!pending.isEmpty()) {
+                flush();
+            } else if (!drainWaiters.isEmpty()) {
+                List<Promise<Void>> waiters = new ArrayList<>(drainWaiters);
+                drainWaiters.clear();
+                waiters.forEach(Promise::complete);
+            }
+        });
+    }
+
+    /**
+     * Writes the pending saves now instead of at the end of the window; completes once the batch in flight and
+     * every save requested before it is drained have been written, or have failed and failed their callers.
+     */
+    public Future<Void> drain() {
+        cancelTimer();
+        if (!flushing && pending.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        Promise<Void> promise = Promise.promise();
+        drainWaiters.add(promise);
+        flush();
+        return promise.future();
+    }
+
+    /**
+     * Counts this batcher's requests and writes in the process-wide totals of {@code metrics} from now on, which
+     * {@link #coalescingRatio()} then reports on.
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        Counter totalRequests = metrics.counter("wiki_db_save_requests_total", "Page saves requested");
+        Counter totalWrites = metrics.counter("wiki_db_save_writes_total", "Page rows written after coalescing");
+        metrics.gauge("wiki_db_save_coalescing_ratio", "Page saves requested per row written",
+            () -> ratio(totalRequests, totalWrites));
+        requests = totalRequests;
+        writes = totalWrites;
+    }
+
+    private void cancelTimer() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    /**
+     * Save requests received per row actually written; 1.0 means nothing was coalesced.
+     */
+    public double coalescingRatio() {
+        return ratio(requests, writes);
+    }
+
+    private static double ratio(Counter requests, Counter writes) {
+        long written = writes.get();
+        return written == 0 ? 1.0 : (double) requests.get() / written;
+    }
+
+    private static final class PendingSave {
+        private String markdown;
+        private final List<Promise<SavedPage>> waiters = new ArrayList<>(1);
+
+        void update(String markdown, Promise<SavedPage> waiter) {
+            this.markdown = markdown;
+            waiters.add(waiter);
+        }
+
+        void complete(AsyncResult<SavedPage> result) {
+            int last = waiters.size() - 1;
+            for (int i = 0; i < last; i++) {
+                waiters.get(i).handle(result.map(SavedPage.SUPERSEDED));
+            }
+            waiters.get(last).handle(result);
+        }
+    }
+}
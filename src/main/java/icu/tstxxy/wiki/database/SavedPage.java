@@ -0,0 +1,45 @@
+package icu.tstxxy.wiki.database;
+
+/**
+ * Outcome of a page save: the revision it committed, with the content it replaced and the delta from that
+ * content when the replaced revision was the known head. A save coalesced into a later save of the same page
+ * committed no revision of its own and is {@link #superseded()}.
+ */
+public final class SavedPage {
+    public static final SavedPage SUPERSEDED = new SavedPage(-1, null, null);
+
+    private final int revision;
+    private final String previous;
+    private final RevisionDelta delta;
+
+    public SavedPage(int revision, String previous, RevisionDelta delta) {
+        this.revision = revision;
+        this.previous = previous;
+        this.delta = delta;
+    }
+
+    public boolean superseded() {
+        return this == SUPERSEDED;
+    }
+
+    /**
+     * Revision committed, -1 if the page does not exist or the save was superseded.
+     */
+    public int revision() {
+        return revision;
+    }
+
+    /**
+     * Content of the revision this one replaced, null if it is not known.
+     */
+    public String previous() {
+        return previous;
+    }
+
+    /**
+     * Delta from {@link #previous()} to the saved content, null if the previous content is not known.
+     */
+    public RevisionDelta delta() {
+        return delta;
+    }
+}
@@ -0,0 +1,219 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Inverted index over page titles and content, ranked with BM25. Built once from the Pages table when the
+ * first database verticle starts and kept up to date by the writes of every instance through
+ * {@link #shared(Vertx)}; searches of different verticles run concurrently under a read lock.
+ * <p>
+ * Tokens are maximal runs of letters or digits, lower-cased, except that every CJK ideograph is a token
+ * of its own since those scripts do not separate words.
+ */
+public class SearchIndex implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wikidb.search.index";
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private long totalLength;
+    private Future<Void> loading;
+
+    public static SearchIndex shared(Vertx vertx) {
+        LocalMap<String, SearchIndex> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new SearchIndex());
+    }
+
+    /**
+     * Builds the index with {@code loader} unless another verticle already has or is building it; completes once
+     * the index is loaded. A failed load is retried by the next caller.
+     */
+    public synchronized Future<Void> load(Supplier<Future<Void>> loader) {
+        if (loading == null) {
+            Future<Void> load = loader.get();
+            loading = load;
+            load.onFailure(e -> {
+                synchronized (this) {
+                    loading = null;
+                }
+            });
+        }
+        return loading;
+    }
+
+    public void put(int id, String title, String content) {
+        List<String> tokens = tokenize(content);
+        lock.writeLock().lock();
+        try {
+            indexLocked(id, title, tokens);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes the content of a page that is already indexed, keeping its title.
+     */
+    public void updateContent(int id, String content) {
+        List<String> tokens = tokenize(content);
+        lock.writeLock().lock();
+        try {
+            Document document = documents.get(id);
+            if (document != null) {
+                indexLocked(id, document.title, tokens);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexLocked(int id, String title, List<String> contentTokens) {
+        List<String> tokens = tokenize(title);
+        tokens.addAll(contentTokens);
+        Map<String, Integer> frequencies = new HashMap<>();
+        tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+
+        removeLocked(id);
+        frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, k -> new HashMap<>()).put(id, tf));
+        documents.put(id, new Document(title, tokens.size(), frequencies.keySet().toArray(new String[0])));
+        totalLength += tokens.size();
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(int id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            Map<Integer, Integer> posting = postings.get(term);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} pages matching any term of {@code query}, best match first, without content.
+     */
+    public List<Page> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            int n = documents.size();
+            double averageLength = n == 0 ? 0 : (double) totalLength / n;
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                Map<Integer, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (n - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((id, tf) -> {
+                    double norm = K1 * (1 - B + B * documents.get(id).length / averageLength);
+                    scores.merge(id, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                });
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+                top.add(score);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<Page> pages = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int id = top.poll().getKey();
+                pages.add(new Page(id, documents.get(id).title, null));
+            }
+            Collections.reverse(pages);
+            return pages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            int next = i + Character.charCount(c);
+            if (Character.isIdeographic(c)) {
+                if (start >= 0) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                    start = -1;
+                }
+                tokens.add(text.substring(i, next));
+            } else if (Character.isLetterOrDigit(c)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i = next;
+        }
+        if (start >= 0) {
+            tokens.add(text.substring(start).toLowerCase(Locale.ROOT));
+        }
+        return tokens;
+    }
+
+    private static final class Document {
+        final String title;
+        final int length;
+        final String[] terms;
+
+        Document(String title, int length, String[] terms) {
+            this.title = title;
+            this.length = length;
+            this.terms = terms;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Future;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one read per key at a time: a request arriving while an identical read is in flight waits
+ * for that read's result instead of taking another pooled connection.
+ * <p>
+ * Must be used from the owning verticle's event loop.
+ */
+public class SingleFlight {
+    private final Map<String, Future<?>> inFlight = new HashMap<>();
+    private final Counter coalesced;
+
+    public SingleFlight(Counter coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> run(String key, Supplier<Future<T>> read) {
+        Future<T> running = (Future<T>) inFlight.get(key);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+        Future<T> future = read.get();
+        if (!future.isComplete()) {
+            inFlight.put(key, future);
+            future.onComplete(ar -> inFlight.remove(key));
+        }
+        return future;
+    }
+
+    int size() {
+        return inFlight.size();
+    }
+}
@@ -2,12 +2,22 @@ package icu.tstxxy.wiki.database;
 
 public enum SqlQuery {
     CREATE_PAGES_TABLE,
+    ADD_PAGES_REVISION_COLUMN,
+    CREATE_PAGE_REVISIONS_TABLE,
     ALL_PAGES,
     ALL_PAGES_DATA,
     GET_PAGE,
     CREATE_PAGE,
+    IMPORT_PAGE,
     SAVE_PAGE,
     DELETE_PAGE,
     GET_PAGE_BY_ID,
     AUTHENTICATE,
+    PAGES_AFTER,
+    PAGE_TITLES_AFTER,
+    PAGE_REVISIONS,
+    PAGE_REVISION,
+    CREATE_REPLICA_HEARTBEAT_TABLE,
+    WRITE_REPLICA_HEARTBEAT,
+    REPLICA_LAG,
 }
@@ -0,0 +1,91 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Page titles sorted case-insensitively so a prefix lookup is a binary search followed by a short scan.
+ * Built together with the {@link SearchIndex} and shared by every database verticle through {@link #shared(Vertx)}.
+ */
+public class TitleIndex implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wikidb.title.index";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Page> titles = new TreeMap<>();
+    private final Map<Integer, String> keysById = new HashMap<>();
+
+    public static TitleIndex shared(Vertx vertx) {
+        LocalMap<String, TitleIndex> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new TitleIndex());
+    }
+
+    public void put(int id, String title) {
+        // The id keeps keys unique when titles only differ in case
+        String key = title.toLowerCase(Locale.ROOT) + '\0' + id;
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            titles.put(key, new Page(id, title, null));
+            keysById.put(id, key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(int id) {
+        String key = keysById.remove(id);
+        if (key != null) {
+            titles.remove(key);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} pages whose title starts with {@code prefix}, ignoring case, in title order.
+     */
+    public List<Page> startingWith(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        String from = prefix.toLowerCase(Locale.ROOT);
+        List<Page> pages = new ArrayList<>(Math.min(limit, 64));
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Page> entry : titles.tailMap(from).entrySet()) {
+                if (pages.size() >= limit || !entry.getKey().startsWith(from)) {
+                    break;
+                }
+                pages.add(entry.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return pages;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return titles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
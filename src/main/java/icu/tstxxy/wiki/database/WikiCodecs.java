@@ -0,0 +1,196 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.shareddata.LocalMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Event bus codecs for the typed messages exchanged on the wiki database queue.
+ * <p>
+ * The message types are immutable, so local delivery hands the sender's instance to the consumer
+ * instead of copying it. The wire form is only used when the event bus is clustered.
+ */
+public final class WikiCodecs {
+    private static final String LOCAL_MAP_NAME = "wiki.codecs";
+
+    private WikiCodecs() {
+    }
+
+    public static synchronized void register(Vertx vertx) {
+        LocalMap<String, Boolean> registered = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        if (registered.putIfAbsent(LOCAL_MAP_NAME, true) != null) {
+            return;
+        }
+        vertx.eventBus()
+            .registerDefaultCodec(Page.class, new PageCodec())
+            .registerDefaultCodec(PageList.class, new PageListCodec())
+            .registerDefaultCodec(AuthResult.class, new AuthResultCodec())
+            .registerDefaultCodec(SavedPage.class, new SavedPageCodec());
+    }
+
+    private abstract static class ImmutableCodec<T> implements MessageCodec<T, T> {
+        private final String name;
+
+        ImmutableCodec(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public T transform(T value) {
+            return value;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public byte systemCodecID() {
+            return -1;
+        }
+    }
+
+    static final class PageCodec extends ImmutableCodec<Page> {
+        PageCodec() {
+            super("wiki.page");
+        }
+
+        @Override
+        public void encodeToWire(Buffer buffer, Page page) {
+            writePage(buffer, page);
+        }
+
+        @Override
+        public Page decodeFromWire(int pos, Buffer buffer) {
+            return readPage(new Reader(buffer, pos));
+        }
+    }
+
+    static final class PageListCodec extends ImmutableCodec<PageList> {
+        PageListCodec() {
+            super("wiki.page-list");
+        }
+
+        @Override
+        public void encodeToWire(Buffer buffer, PageList list) {
+            buffer.appendInt(list.next() == null ? -1 : list.next());
+            buffer.appendInt(list.pages().size());
+            list.pages().forEach(page -> writePage(buffer, page));
+        }
+
+        @Override
+        public PageList decodeFromWire(int pos, Buffer buffer) {
+            var reader = new Reader(buffer, pos);
+            int next = reader.readInt();
+            int size = reader.readInt();
+            List<Page> pages = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                pages.add(readPage(reader));
+            }
+            return new PageList(pages, next == -1 ? null : next);
+        }
+    }
+
+    static final class AuthResultCodec extends ImmutableCodec<AuthResult> {
+        AuthResultCodec() {
+            super("wiki.auth-result");
+        }
+
+        @Override
+        public void encodeToWire(Buffer buffer, AuthResult result) {
+            buffer.appendByte((byte) (result.found() ? 1 : 0));
+        }
+
+        @Override
+        public AuthResult decodeFromWire(int pos, Buffer buffer) {
+            return AuthResult.of(buffer.getByte(pos) == 1);
+        }
+    }
+
+    static final class SavedPageCodec extends ImmutableCodec<SavedPage> {
+        SavedPageCodec() {
+            super("wiki.saved-page");
+        }
+
+        @Override
+        public void encodeToWire(Buffer buffer, SavedPage saved) {
+            buffer.appendByte((byte) (saved.superseded() ? 1 : 0));
+            buffer.appendInt(saved.revision());
+            writeString(buffer, saved.previous());
+            RevisionDelta delta = saved.delta();
+            buffer.appendInt(delta == null ? -1 : delta.prefixLength());
+            buffer.appendInt(delta == null ? -1 : delta.suffixLength());
+            writeString(buffer, delta == null ? null : delta.middle());
+        }
+
+        @Override
+        public SavedPage decodeFromWire(int pos, Buffer buffer) {
+            var reader = new Reader(buffer, pos);
+            if (reader.readByte() == 1) {
+                return SavedPage.SUPERSEDED;
+            }
+            int revision = reader.readInt();
+            String previous = reader.readString();
+            int prefix = reader.readInt();
+            int suffix = reader.readInt();
+            String middle = reader.readString();
+            return new SavedPage(revision, previous, prefix == -1 ? null : new RevisionDelta(prefix, suffix, middle));
+        }
+    }
+
+    private static void writePage(Buffer buffer, Page page) {
+        buffer.appendInt(page.id());
+        writeString(buffer, page.title());
+        writeString(buffer, page.content());
+        buffer.appendByte((byte) (page.fromReplica() ? 1 : 0));
+    }
+
+    private static Page readPage(Reader reader) {
+        return new Page(reader.readInt(), reader.readString(), reader.readString(), reader.readByte() == 1);
+    }
+
+    private static void writeString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.appendInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length).appendBytes(bytes);
+    }
+
+    private static final class Reader {
+        private final Buffer buffer;
+        private int pos;
+
+        Reader(Buffer buffer, int pos) {
+            this.buffer = buffer;
+            this.pos = pos;
+        }
+
+        int readInt() {
+            int value = buffer.getInt(pos);
+            pos += 4;
+            return value;
+        }
+
+        byte readByte() {
+            return buffer.getByte(pos++);
+        }
+
+        String readString() {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            String value = buffer.getString(pos, pos + length, "UTF-8");
+            pos += length;
+            return value;
+        }
+    }
+}
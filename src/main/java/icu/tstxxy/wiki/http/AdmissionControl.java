@@ -0,0 +1,35 @@
+package icu.tstxxy.wiki.http;
+
+/**
+ * Bounds the API requests of one HTTP verticle that may be waiting on the database at the same time, so a
+ * spike is answered with fast 503s instead of piling up on the database queue until the event bus times out.
+ * Reads are turned away first: the last {@code reservedForWrites} slots only admit writes.
+ * <p>
+ * Must be used from the owning verticle's event loop.
+ */
+public class AdmissionControl {
+    private final int maxInFlight;
+    private final int maxReads;
+    private int inFlight;
+
+    public AdmissionControl(int maxInFlight, int reservedForWrites) {
+        this.maxInFlight = maxInFlight;
+        this.maxReads = Math.max(1, maxInFlight - reservedForWrites);
+    }
+
+    public boolean tryAcquire(boolean write) {
+        if (inFlight >= (write ? maxInFlight : maxReads)) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    public void release() {
+        inFlight--;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,101 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.authentication.Credentials;
+import io.vertx.ext.auth.authentication.TokenCredentials;
+import io.vertx.ext.auth.jwt.JWTAuth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the users of recently verified tokens so a client presenting the same bearer token again
+ * skips signature verification and claim parsing. Tokens are keyed by their SHA-256 digest, and a cached
+ * user is dropped once its {@code exp} claim has passed. Failed verifications are never cached.
+ * <p>
+ * Must be used from the owning verticle's event loop.
+ */
+public class CachingJWTAuth implements JWTAuth {
+    private final JWTAuth delegate;
+    private final int maxEntries;
+    private final MessageDigest sha256;
+    private final LinkedHashMap<String, User> users;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingJWTAuth(JWTAuth delegate, int maxEntries, Counter hits, Counter misses) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.hits = hits;
+        this.misses = misses;
+        this.users = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                return size() > CachingJWTAuth.this.maxEntries;
+            }
+        };
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String generateToken(JsonObject claims, JWTOptions options) {
+        return delegate.generateToken(claims, options);
+    }
+
+    @Override
+    public void authenticate(Credentials credentials, Handler<AsyncResult<User>> resultHandler) {
+        if (credentials instanceof TokenCredentials) {
+            authenticate(((TokenCredentials) credentials).getToken(), credentials, resultHandler);
+        } else {
+            delegate.authenticate(credentials, resultHandler);
+        }
+    }
+
+    @Override
+    public void authenticate(JsonObject credentials, Handler<AsyncResult<User>> resultHandler) {
+        authenticate(credentials.getString("token"), new TokenCredentials(credentials), resultHandler);
+    }
+
+    private void authenticate(String token, Credentials credentials, Handler<AsyncResult<User>> resultHandler) {
+        if (token == null) {
+            delegate.authenticate(credentials, resultHandler);
+            return;
+        }
+        String key = Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        User cached = users.get(key);
+        if (cached != null) {
+            if (!cached.expired()) {
+                hits.increment();
+                resultHandler.handle(Future.succeededFuture(cached));
+                return;
+            }
+            users.remove(key);
+        }
+
+        misses.increment();
+        delegate.authenticate(credentials, ar -> {
+            if (ar.succeeded()) {
+                users.put(key, ar.result());
+            }
+            resultHandler.handle(ar);
+        });
+    }
+
+    int size() {
+        return users.size();
+    }
+}
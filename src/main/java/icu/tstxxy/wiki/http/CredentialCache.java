@@ -0,0 +1,81 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Future;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Results of recent credential checks, keyed by a SHA-256 digest of the username and password so no
+ * password is kept in memory. Concurrent checks of the same credentials share one pending lookup, and
+ * a lookup that fails is forgotten so the next attempt goes to the database again.
+ * <p>
+ * Must be used from the owning verticle's event loop.
+ */
+public class CredentialCache {
+    private final long ttlMs;
+    private final int maxEntries;
+    private final MessageDigest sha256;
+    private final LinkedHashMap<String, Lookup> lookups;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CredentialCache(long ttlMs, int maxEntries, Counter hits, Counter misses) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.hits = hits;
+        this.misses = misses;
+        this.lookups = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Lookup> eldest) {
+                return size() > CredentialCache.this.maxEntries;
+            }
+        };
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Future<Boolean> check(String username, String password, Supplier<Future<Boolean>> lookup) {
+        String key = digest(username, password);
+        long now = System.currentTimeMillis();
+        Lookup entry = lookups.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            hits.increment();
+            return entry.result;
+        }
+
+        misses.increment();
+        Future<Boolean> result = lookup.get();
+        Lookup fresh = new Lookup(result, now + ttlMs);
+        lookups.put(key, fresh);
+        result.onFailure(e -> lookups.remove(key, fresh));
+        return result;
+    }
+
+    private String digest(String username, String password) {
+        byte[] name = String.valueOf(username).getBytes(StandardCharsets.UTF_8);
+        sha256.update(ByteBuffer.allocate(4).putInt(name.length).array());
+        sha256.update(name);
+        return Base64.getEncoder().encodeToString(sha256.digest(String.valueOf(password).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final class Lookup {
+        final Future<Boolean> result;
+        final long expiresAt;
+
+        Lookup(Future<Boolean> result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
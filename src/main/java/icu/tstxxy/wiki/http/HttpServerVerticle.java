@@ -1,125 +1,712 @@
 package icu.tstxxy.wiki.http;
 
-import com.github.rjeschke.txtmark.Processor;
+import icu.tstxxy.wiki.ContentHash;
+import icu.tstxxy.wiki.database.DatabaseService;
+import icu.tstxxy.wiki.database.ErrorCode;
+import icu.tstxxy.wiki.database.Page;
+import icu.tstxxy.wiki.database.RevisionDelta;
+import icu.tstxxy.wiki.database.SavedPage;
+import icu.tstxxy.wiki.database.WikiCodecs;
+import icu.tstxxy.wiki.markdown.BlockCache;
+import icu.tstxxy.wiki.markdown.IncrementalRenderer;
+import icu.tstxxy.wiki.markdown.MarkdownRenderer;
+import icu.tstxxy.wiki.markdown.RenderCache;
+import icu.tstxxy.wiki.markdown.RenderException;
+import icu.tstxxy.wiki.metrics.Counter;
+import icu.tstxxy.wiki.metrics.Histogram;
+import icu.tstxxy.wiki.metrics.MetricsRegistry;
+import icu.tstxxy.wiki.tracing.Trace;
+import icu.tstxxy.wiki.tracing.TraceBuffer;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Promise;
-import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.Http2Settings;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.JksOptions;
 import io.vertx.ext.auth.JWTOptions;
 import io.vertx.ext.auth.PubSecKeyOptions;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.bridge.BridgeEventType;
 import io.vertx.ext.bridge.PermittedOptions;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.*;
+import io.vertx.ext.web.handler.sockjs.BridgeEvent;
 import io.vertx.ext.web.handler.sockjs.SockJSBridgeOptions;
 import io.vertx.ext.web.handler.sockjs.SockJSHandler;
+import io.vertx.ext.web.handler.sockjs.SockJSHandlerOptions;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 public class HttpServerVerticle extends AbstractVerticle {
+    public static final String CONFIG_HTTP_PORT = "http.port";
+    public static final String CONFIG_HTTP_RENDER_CACHE_MAX_BYTES = "http.render.cache.max.bytes";
+    public static final String CONFIG_HTTP_RENDER_POOL_SIZE = "http.render.pool.size";
+    public static final String CONFIG_HTTP_RENDER_MAX_QUEUE = "http.render.max.queue";
+    public static final String CONFIG_HTTP_RENDER_TIMEOUT_MS = "http.render.timeout.ms";
+    public static final String CONFIG_HTTP_RENDER_MAX_CHARS = "http.render.max.chars";
+    public static final String CONFIG_HTTP_RENDER_BLOCK_CACHE_MAX_BYTES = "http.render.block.cache.max.bytes";
+    public static final String CONFIG_HTTP_PREVIEW_RATE_PER_SECOND = "http.preview.rate.per.second";
+    public static final String CONFIG_HTTP_PREVIEW_BURST = "http.preview.burst";
+    public static final String CONFIG_HTTP_PAGES_MAX_LIMIT = "http.pages.max.limit";
+    public static final String CONFIG_HTTP_PAGES_STREAM_BATCH_SIZE = "http.pages.stream.batch.size";
+    public static final String CONFIG_HTTP_METRICS_LAG_INTERVAL_MS = "http.metrics.lag.interval.ms";
+    public static final String CONFIG_HTTP_TRACE_SLOW_MS = "http.trace.slow.ms";
+    public static final String CONFIG_HTTP_TRACE_SAMPLE_RATE = "http.trace.sample.rate";
+    public static final String CONFIG_HTTP_TRACE_BUFFER_SIZE = "http.trace.buffer.size";
+    public static final String CONFIG_HTTP_PAGE_VERSIONS_MAX_SIZE = "http.page.versions.max.size";
+    public static final String CONFIG_HTTP_AUTH_ENABLED = "http.auth.enabled";
+    public static final String CONFIG_HTTP_AUTH_TOKEN_EXPIRES_MINUTES = "http.auth.token.expires.minutes";
+    public static final String CONFIG_HTTP_AUTH_TOKEN_CACHE_SIZE = "http.auth.token.cache.size";
+    public static final String CONFIG_HTTP_AUTH_CREDENTIALS_CACHE_TTL_MS = "http.auth.credentials.cache.ttl.ms";
+    public static final String CONFIG_HTTP_AUTH_CREDENTIALS_CACHE_SIZE = "http.auth.credentials.cache.size";
+    public static final String CONFIG_HTTP_COMPRESSION_LEVEL = "http.compression.level";
+    public static final String CONFIG_HTTP_HTTP2_ENABLED = "http.http2.enabled";
+    public static final String CONFIG_HTTP_HTTP2_MAX_CONCURRENT_STREAMS = "http.http2.max.concurrent.streams";
+    public static final String CONFIG_HTTP_HTTP2_STREAM_WINDOW_SIZE = "http.http2.stream.window.size";
+    public static final String CONFIG_HTTP_HTTP2_CONNECTION_WINDOW_SIZE = "http.http2.connection.window.size";
+    public static final String CONFIG_HTTP_IDLE_TIMEOUT_SECONDS = "http.idle.timeout.seconds";
+    public static final String CONFIG_HTTP_TLS_PROTOCOLS = "http.tls.protocols";
+    public static final String CONFIG_HTTP_IMPORT_BATCH_SIZE = "http.import.batch.size";
+    public static final String CONFIG_HTTP_DB_MAX_IN_FLIGHT = "http.db.max.in.flight";
+    public static final String CONFIG_HTTP_DB_RESERVED_FOR_WRITES = "http.db.reserved.for.writes";
+    public static final String CONFIG_HTTP_DB_TIMEOUT_MS = "http.db.timeout.ms";
+    public static final String CONFIG_HTTP_DB_DIRECT = "http.db.direct";
+    public static final String CONFIG_HTTP_PUSH_RENDERED_BLOCKS = "http.push.rendered.blocks";
+    private static final long DEFAULT_RENDER_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final List<String> PAGE_FIELDS = List.of("id", "title", "content");
+    private static final String IMPORT_PATH = "/api/pages/import";
+    private static final String PAGE_SAVED_PREFIX = "page.saved.";
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpServerVerticle.class);
     private final String wikiDbQueue = "wikidb.queue";
+    private DatabaseService database;
+    private boolean pushRenderedBlocks;
     private JWTAuth jwtAuth;
+    private CredentialCache credentialCache;
+    private RenderCache renderCache;
+    private PageVersions pageVersions;
+    private StaticAssets staticAssets;
+    private MarkdownRenderer renderer;
+    private IncrementalRenderer incrementalRenderer;
+    private PreviewThrottle previewThrottle;
+    private int maxPageLimit;
+    private int streamBatchSize;
+    private int importBatchSize;
+    private AdmissionControl admission;
+    private Counter admittedGauge;
+    private long dbTimeoutMs;
+    private MetricsRegistry metrics;
+    private final Map<String, Histogram> dbRequestLatency = new HashMap<>();
+    private TraceBuffer traceBuffer;
+    private long slowTraceNanos;
+    private double traceSampleRate;
 
     @Override
     public void start(Promise<Void> startPromise) {
-        jwtAuth = JWTAuth.create(vertx, new JWTAuthOptions().addPubSecKey(new PubSecKeyOptions()
-            .setAlgorithm("HS256").setBuffer("secret")));
+        WikiCodecs.register(vertx);
+        renderCache = RenderCache.shared(vertx,
+            config().getLong(CONFIG_HTTP_RENDER_CACHE_MAX_BYTES, DEFAULT_RENDER_CACHE_MAX_BYTES));
+        renderer = new MarkdownRenderer(vertx,
+            config().getInteger(CONFIG_HTTP_RENDER_POOL_SIZE, Runtime.getRuntime().availableProcessors()),
+            config().getInteger(CONFIG_HTTP_RENDER_MAX_QUEUE, 64),
+            config().getLong(CONFIG_HTTP_RENDER_TIMEOUT_MS, 2000L),
+            config().getInteger(CONFIG_HTTP_RENDER_MAX_CHARS, 1024 * 1024));
+        incrementalRenderer = new IncrementalRenderer(renderer, BlockCache.shared(vertx,
+            config().getLong(CONFIG_HTTP_RENDER_BLOCK_CACHE_MAX_BYTES, DEFAULT_RENDER_CACHE_MAX_BYTES / 2)));
+        pageVersions = PageVersions.shared(vertx, config().getInteger(CONFIG_HTTP_PAGE_VERSIONS_MAX_SIZE, 100_000));
+        staticAssets = StaticAssets.shared(vertx, "webroot", "/app/", "index.html");
+        previewThrottle = PreviewThrottle.shared(vertx,
+            config().getDouble(CONFIG_HTTP_PREVIEW_RATE_PER_SECOND, 10.0),
+            config().getInteger(CONFIG_HTTP_PREVIEW_BURST, 20));
+        maxPageLimit = config().getInteger(CONFIG_HTTP_PAGES_MAX_LIMIT, 1000);
+        streamBatchSize = config().getInteger(CONFIG_HTTP_PAGES_STREAM_BATCH_SIZE, 200);
+        importBatchSize = config().getInteger(CONFIG_HTTP_IMPORT_BATCH_SIZE, 500);
+        admission = new AdmissionControl(config().getInteger(CONFIG_HTTP_DB_MAX_IN_FLIGHT, 128),
+            config().getInteger(CONFIG_HTTP_DB_RESERVED_FOR_WRITES, 16));
+        dbTimeoutMs = config().getLong(CONFIG_HTTP_DB_TIMEOUT_MS, 5000L);
+        database = config().getBoolean(CONFIG_HTTP_DB_DIRECT, true)
+            ? DatabaseService.createLocal(vertx, wikiDbQueue, dbTimeoutMs)
+            : DatabaseService.createProxy(vertx, wikiDbQueue, dbTimeoutMs);
+        pushRenderedBlocks = config().getBoolean(CONFIG_HTTP_PUSH_RENDERED_BLOCKS, true);
+        metrics = MetricsRegistry.shared(vertx);
+        admittedGauge = metrics.gauge("wiki_http_db_requests_in_flight", "Admitted API requests that use the database");
+        renderer.registerMetrics(metrics);
+        registerRenderCacheMetrics();
+        sampleEventLoopLag(config().getLong(CONFIG_HTTP_METRICS_LAG_INTERVAL_MS, 100L));
+        traceBuffer = TraceBuffer.shared(vertx, config().getInteger(CONFIG_HTTP_TRACE_BUFFER_SIZE, 256));
+        slowTraceNanos = config().getLong(CONFIG_HTTP_TRACE_SLOW_MS, 500L) * 1_000_000;
+        traceSampleRate = config().getDouble(CONFIG_HTTP_TRACE_SAMPLE_RATE, 1.0);
+        vertx.eventBus().<JsonObject>consumer("page.saved", msg -> renderCache.invalidate(msg.body().getInteger("id")));
 
-        HttpServer server = vertx.createHttpServer(new HttpServerOptions().setSsl(true)
-            .setKeyStoreOptions(new JksOptions().setPath("server-keystore.jks").setPassword("secret")));
+        jwtAuth = new CachingJWTAuth(JWTAuth.create(vertx, new JWTAuthOptions().addPubSecKey(new PubSecKeyOptions()
+            .setAlgorithm("HS256").setBuffer("secret"))),
+            config().getInteger(CONFIG_HTTP_AUTH_TOKEN_CACHE_SIZE, 10_000),
+            metrics.counter("wiki_auth_token_cache_hits_total", "Bearer tokens accepted without verifying the signature"),
+            metrics.counter("wiki_auth_token_cache_misses_total", "Bearer tokens verified"));
+        credentialCache = new CredentialCache(config().getLong(CONFIG_HTTP_AUTH_CREDENTIALS_CACHE_TTL_MS, 30_000L),
+            config().getInteger(CONFIG_HTTP_AUTH_CREDENTIALS_CACHE_SIZE, 10_000),
+            metrics.counter("wiki_auth_credentials_cache_hits_total", "Token requests answered without a database lookup"),
+            metrics.counter("wiki_auth_credentials_cache_misses_total", "Token requests checked against the database"));
 
-        server.requestHandler(getRouter()).listen(443).onFailure(e -> {
-            LOGGER.error(e.getMessage());
-            startPromise.fail(e.getCause());
+        HttpServer server = vertx.createHttpServer(serverOptions());
+
+        server.requestHandler(getRouter()).listen(config().getInteger(CONFIG_HTTP_PORT, 443))
+            .onSuccess(s -> startPromise.complete())
+            .onFailure(e -> {
+                LOGGER.error(e.getMessage());
+                startPromise.fail(e);
+            });
+    }
+
+    /**
+     * HTTPS with HTTP/2 negotiated through ALPN. TLS sessions are resumed from the JDK's server session cache
+     * and, with TLS 1.3, session tickets; its size follows the {@code javax.net.ssl.sessionCacheSize} system property.
+     */
+    private HttpServerOptions serverOptions() {
+        int compressionLevel = config().getInteger(CONFIG_HTTP_COMPRESSION_LEVEL, 6);
+        Set<String> protocols = new LinkedHashSet<>(Arrays.asList(
+            config().getString(CONFIG_HTTP_TLS_PROTOCOLS, "TLSv1.2,TLSv1.3").split(",")));
+        return new HttpServerOptions().setSsl(true)
+            .setKeyStoreOptions(new JksOptions().setPath("server-keystore.jks").setPassword("secret"))
+            .setEnabledSecureTransportProtocols(protocols)
+            .setUseAlpn(config().getBoolean(CONFIG_HTTP_HTTP2_ENABLED, true))
+            .setInitialSettings(new Http2Settings()
+                .setMaxConcurrentStreams(config().getLong(CONFIG_HTTP_HTTP2_MAX_CONCURRENT_STREAMS, 256L))
+                .setInitialWindowSize(config().getInteger(CONFIG_HTTP_HTTP2_STREAM_WINDOW_SIZE, 1024 * 1024)))
+            .setHttp2ConnectionWindowSize(config().getInteger(CONFIG_HTTP_HTTP2_CONNECTION_WINDOW_SIZE, 4 * 1024 * 1024))
+            .setTcpKeepAlive(true)
+            .setIdleTimeout(config().getInteger(CONFIG_HTTP_IDLE_TIMEOUT_SECONDS, 300))
+            .setCompressionSupported(compressionLevel > 0)
+            .setCompressionLevel(Math.max(1, compressionLevel));
+    }
+
+    private void registerRenderCacheMetrics() {
+        metrics.counter("wiki_render_cache_hits_total", "Rendered page cache hits", renderCache::hits);
+        metrics.counter("wiki_render_cache_misses_total", "Rendered page cache misses", renderCache::misses);
+        metrics.counter("wiki_render_cache_evictions_total", "Rendered pages evicted to stay within budget",
+            renderCache::evictions);
+        metrics.gauge("wiki_render_cache_bytes", "Estimated size of the rendered page cache", renderCache::bytes);
+    }
+
+    /**
+     * Measures how late a periodic timer fires on this verticle's event loop, which is how long
+     * every other event on that loop had to wait too.
+     */
+    private void sampleEventLoopLag(long intervalMs) {
+        Histogram lag = metrics.histogram("wiki_event_loop_lag_seconds", "Delay of a periodic timer on the HTTP event loops");
+        long intervalNanos = intervalMs * 1_000_000;
+        long[] expected = {System.nanoTime() + intervalNanos};
+        vertx.setPeriodic(intervalMs, t -> {
+            long now = System.nanoTime();
+            lag.record(Math.max(0, now - expected[0]));
+            expected[0] = now + intervalNanos;
+        });
+    }
+
+    /**
+     * Calls the database verticles, recording the round trip of {@code action} and, when the request is traced,
+     * the time the call waited for a database verticle and spent in it.
+     */
+    private <T> Future<T> db(Trace trace, String action, Function<DatabaseService, Future<T>> call) {
+        Histogram latency = dbRequestLatency.computeIfAbsent(action, k -> metrics.histogram("wiki_eventbus_request_seconds",
+            "Round trip of a request to the database verticles, by action", "action", k));
+        long start = System.nanoTime();
+        return call.apply(trace == null ? database : database.traced(trace)).onComplete(ar -> {
+            latency.recordSince(start);
+            if (trace != null) {
+                trace.spanSince("call." + action, start);
+            }
+        });
+    }
+
+    /**
+     * Starts a trace for an API request; traces of requests slower than the configured threshold are
+     * logged and kept for {@code GET /admin/traces}.
+     */
+    private void startTrace(RoutingContext context) {
+        Trace trace = Trace.start(context.request().getHeader("X-Trace-Id"));
+        context.put(Trace.ID_HEADER, trace);
+        context.response().putHeader("X-Trace-Id", trace.id());
+        context.addBodyEndHandler(v -> {
+            if (trace.elapsedNanos() < slowTraceNanos || ThreadLocalRandom.current().nextDouble() >= traceSampleRate) {
+                return;
+            }
+            JsonObject json = trace.toJson()
+                .put("method", context.request().method().name())
+                .put("path", context.request().path())
+                .put("status", context.response().getStatusCode());
+            LOGGER.warn("Slow request " + json.encode());
+            traceBuffer.add(json);
         });
+        context.next();
+    }
+
+    private Trace trace(RoutingContext context) {
+        return context.get(Trace.ID_HEADER);
+    }
+
+    /**
+     * Records the latency of every request handled by {@code handler} and counts its server errors.
+     */
+    private Handler<RoutingContext> timed(String route, Handler<RoutingContext> handler) {
+        Histogram latency = metrics.histogram("wiki_http_request_seconds", "Time to answer an HTTP request, by route",
+            "route", route);
+        Counter errors = metrics.counter("wiki_http_server_errors_total", "HTTP responses with a 5xx status, by route",
+            "route", route);
+        return context -> {
+            long start = System.nanoTime();
+            context.addBodyEndHandler(v -> {
+                latency.recordSince(start);
+                if (context.response().getStatusCode() >= 500) {
+                    errors.increment();
+                }
+            });
+            handler.handle(context);
+        };
+    }
+
+    /**
+     * Answers 503 right away when this verticle already has too many API requests waiting on the database;
+     * writes may use the slots reserved for them.
+     */
+    private Handler<RoutingContext> admitted(boolean write, Handler<RoutingContext> handler) {
+        Counter shed = metrics.counter("wiki_http_shed_total", "API requests rejected because the database is saturated, by kind",
+            "kind", write ? "write" : "read");
+        return context -> {
+            if (!admission.tryAcquire(write)) {
+                shed.increment();
+                context.response().setStatusCode(503).putHeader("Retry-After", "1")
+                    .putHeader("Content-Type", "application/json")
+                    .end(new JsonObject().put("success", false).put("error", "Too many requests in flight").encode());
+                return;
+            }
+            admittedGauge.increment();
+            context.addEndHandler(ar -> {
+                admission.release();
+                admittedGauge.decrement();
+            });
+            handler.handle(context);
+        };
     }
 
     private void apiDeletePage(RoutingContext context) {
         int id = Integer.parseInt(context.request().getParam("id"));
-        var request = new JsonObject().put("id", id);
-        var options = new DeliveryOptions().addHeader("action", "delete-page");
-        handleSimpleRequest(context, request, options, 200);
+        renderCache.invalidate(id);
+        pageVersions.invalidate(id);
+        handleSimpleRequest(context, db(trace(context), "delete-page", db -> db.deletePage(id)), 200,
+            () -> pageVersions.invalidate(id));
     }
 
     private void apiUpdatePage(RoutingContext context) {
         int id = Integer.parseInt(context.request().getParam("id"));
         var page = context.getBodyAsJson();
         if (!validateJsonPageDocument(context, page, "markdown")) return;
-        var request = new JsonObject().put("id", id).put("markdown", page.getString("markdown"));
-        var options = new DeliveryOptions().addHeader("action", "save-page");
+        String markdown = page.getString("markdown");
+        long version = ContentHash.of(markdown);
+        String ifMatch = context.request().getHeader("If-Match");
 
-        vertx.eventBus().request(wikiDbQueue, request, options).compose(message -> {
-            var event = new JsonObject()
-                .put("id", id)
-                .put("client", page.getString("client"));
-            vertx.eventBus().publish("page.saved", event);
+        long generation = pageVersions.generation();
+        Future<Boolean> reserved = ifMatch == null ? Future.succeededFuture(false) : currentVersion(context, id)
+            .map(current -> {
+                if (current == null || !etagMatches(ifMatch, current, false)
+                    || !pageVersions.beginUpdate(generation, id, current)) {
+                    throw new PreconditionFailedException();
+                }
+                return true;
+            });
+
+        reserved.compose(conditional -> db(trace(context), "save-page", db -> db.savePage(id, markdown))
+            .onComplete(ar -> {
+                // Saves of the page through other verticles or coalesced with this one may have committed later
+                if (reserved.result()) {
+                    pageVersions.endUpdate(id);
+                } else {
+                    pageVersions.invalidate(id);
+                }
+            })).compose(saved -> {
+            String client = page.getString("client");
+            vertx.eventBus().publish("page.saved", new JsonObject().put("id", id).put("client", client));
+            // A superseded save never became a revision, the save that replaced it publishes the diff
+            if (!saved.superseded()) {
+                publishPageDiff(id, client, saved, markdown, version);
+            }
 
             return context.response()
-                .setStatusCode(200).putHeader("Content-Type", "application/json")
+                .setStatusCode(200).putHeader("Content-Type", "application/json").putHeader("ETag", etag(version))
                 .end(new JsonObject().put("success", true).encode());
 
         }).onFailure(e -> {
+            if (e instanceof PreconditionFailedException) {
+                context.response().setStatusCode(412).putHeader("Content-Type", "application/json")
+                    .end(new JsonObject().put("success", false).put("error", "The page has been changed").encode());
+                return;
+            }
             LOGGER.error(e.getMessage());
-            context.response().setStatusCode(500).putHeader("Content-Type", "application/json")
-                .end(new JsonObject().put("success", false).put("error", e.getMessage()).encode());
+            respondFailure(context, e);
         });
     }
 
+    /**
+     * Publishes a save on the page's own address, which only the SockJS clients showing that page subscribe to:
+     * the delta from the previous revision, identified by its ETag, and the HTML of the blocks that revision did
+     * not have, so the clients update in place instead of each fetching and rendering the page again. Clients
+     * holding another revision fall back to refetching the page. The database verticle computed the delta while
+     * writing the revision, against the revision it replaced.
+     */
+    private void publishPageDiff(int id, String client, SavedPage saved, String markdown, long version) {
+        var event = new JsonObject().put("id", id).put("client", client).put("etag", etag(version));
+        String previous = saved.previous();
+        if (previous == null) {
+            vertx.eventBus().publish(PAGE_SAVED_PREFIX + id, event);
+            return;
+        }
+        RevisionDelta delta = saved.delta();
+        event.put("base", etag(ContentHash.of(previous)))
+            .put("delta", new JsonObject()
+                .put("prefix", delta.prefixLength())
+                .put("suffix", delta.suffixLength())
+                .put("text", delta.middle()));
+        if (!pushRenderedBlocks) {
+            vertx.eventBus().publish(PAGE_SAVED_PREFIX + id, event);
+            return;
+        }
+        incrementalRenderer.renderPatch(markdown, IncrementalRenderer.blockIds(previous))
+            .onSuccess(patch -> event.put("blocks", patch.getJsonArray("blocks")))
+            .onComplete(ar -> vertx.eventBus().publish(PAGE_SAVED_PREFIX + id, event));
+    }
+
+    /**
+     * Resolves the current version of a page from the version map, or from the database if it is not known;
+     * null if the page does not exist.
+     */
+    private Future<Long> currentVersion(RoutingContext context, int id) {
+        Long known = pageVersions.get(id);
+        if (known != null) {
+            return Future.succeededFuture(known);
+        }
+        long generation = pageVersions.generation();
+        return db(trace(context), "get-page-by-id", db -> db.fetchPageById(id)).map(page -> {
+            long version = ContentHash.of(page.content());
+            if (!page.fromReplica()) {
+                pageVersions.fill(generation, id, version);
+            }
+            return (Long) version;
+        }).recover(e -> isNotFound(e) ? Future.succeededFuture() : Future.failedFuture(e));
+    }
+
+    private static String etag(long version) {
+        return "\"" + ContentHash.hex(version) + "\"";
+    }
+
+    /**
+     * Whether an If-Match or If-None-Match header lists {@code version}; If-None-Match compares weakly.
+     */
+    private static boolean etagMatches(String header, long version, boolean weak) {
+        return etagMatches(header, etag(version), weak);
+    }
+
+    static boolean etagMatches(String header, String expected, boolean weak) {
+        if (header == null) {
+            return false;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (weak && tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void apiCreatePage(RoutingContext context) {
         JsonObject page = context.getBodyAsJson();
         if (!validateJsonPageDocument(context, page, "title", "content")) return;
-        var options = new DeliveryOptions().addHeader("action", "create-page");
-        var request = new JsonObject().put("title", page.getString("title"))
-            .put("content", page.getString("markdown"));
+        String title = page.getString("title");
+        String content = page.getString("content");
 
-        handleSimpleRequest(context, request, options, 201);
+        handleSimpleRequest(context, db(trace(context), "create-page", db -> db.createPage(title, content)), 201);
+    }
+
+    /**
+     * Creates the pages of an NDJSON body as it arrives, {@code http.import.batch.size} pages per database request.
+     */
+    private void apiImport(RoutingContext context) {
+        var pageImport = new PageImport(context.request(), importBatchSize,
+            pages -> db(null, "import-pages", db -> db.importPages(pages)));
+        pageImport.run().onSuccess(counts -> context.response().setStatusCode(200)
+            .putHeader("Content-Type", "application/json")
+            .end(counts.put("success", true).encode()))
+            .onFailure(e -> {
+                LOGGER.error("Import failed: " + e.getMessage());
+                var response = context.response();
+                if (isOverloaded(e)) {
+                    response.setStatusCode(503).putHeader("Retry-After", "1");
+                } else {
+                    response.setStatusCode(e instanceof IllegalArgumentException ? 400 : 500);
+                }
+                response.putHeader("Content-Type", "application/json")
+                    .end(new JsonObject().put("success", false).put("error", e.getMessage())
+                        .put("imported", pageImport.imported()).encode());
+            });
     }
 
     private void apiRoot(RoutingContext context) {
-        DeliveryOptions options = new DeliveryOptions().addHeader("action", "all-pages-data");
-        vertx.eventBus().request(wikiDbQueue, new JsonObject(), options).compose(
-            message -> context.response().setStatusCode(200)
-                .putHeader("Content-Type", "application/json")
-                .end(new JsonObject().put("success", true).put("pages", message.body()).encode()))
-            .onFailure(e -> context.response().setStatusCode(500)
+        List<String> fields = context.queryParam("fields").isEmpty()
+            ? PAGE_FIELDS : Arrays.asList(context.queryParam("fields").get(0).split(","));
+        int after;
+        int limit;
+        try {
+            after = Integer.parseInt(queryParam(context, "after", "0"));
+            limit = Integer.parseInt(queryParam(context, "limit", "0"));
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).putHeader("Content-Type", "application/json")
+                .end(new JsonObject().put("success", false).put("error", "Bad pagination parameters").encode());
+            return;
+        }
+
+        if (limit <= 0) {
+            streamPages(context, after, fields);
+            return;
+        }
+
+        boolean withContent = fields.contains("content");
+        db(trace(context), "pages-after", db -> db.fetchPagesAfter(after, Math.min(limit, maxPageLimit), withContent)).compose(list -> {
+            var pages = new JsonArray();
+            list.pages().forEach(page -> pages.add(project(page.toJson(), fields)));
+            return context.response().setStatusCode(200)
                 .putHeader("Content-Type", "application/json")
-                .end(new JsonObject().put("success", true).put("error", e.getCause()).encode()));
+                .end(new JsonObject().put("success", true).put("pages", pages)
+                    .put("next", list.next()).encode());
+        }).onFailure(e -> respondFailure(context, e));
+    }
+
+    /**
+     * Writes every page after {@code after} as one chunked JSON document, fetching keyset slices of
+     * {@code streamBatchSize} rows and only asking for the next slice once the response has drained.
+     */
+    private void streamPages(RoutingContext context, int after, List<String> fields) {
+        HttpServerResponse response = context.response();
+        response.setChunked(true).setStatusCode(200).putHeader("Content-Type", "application/json");
+        response.write("{\"success\":true,\"pages\":[");
+        streamPagesAfter(response, trace(context), after, fields, true, false);
+    }
+
+    /**
+     * Writes every page as one JSON object per line, in the format read by {@code POST /api/pages/import}.
+     */
+    private void apiExport(RoutingContext context) {
+        HttpServerResponse response = context.response();
+        response.setChunked(true).setStatusCode(200).putHeader("Content-Type", "application/x-ndjson");
+        // A trace would collect a span per slice of a possibly huge export
+        streamPagesAfter(response, null, 0, PAGE_FIELDS, true, true);
+    }
+
+    private void streamPagesAfter(HttpServerResponse response, Trace trace, int after, List<String> fields, boolean first,
+                                  boolean ndjson) {
+        boolean withContent = fields.contains("content");
+        db(trace, "pages-after", db -> db.fetchPagesAfter(after, streamBatchSize, withContent)).onSuccess(list -> {
+            if (response.closed()) {
+                return;
+            }
+            List<Page> pages = list.pages();
+            Buffer chunk = Buffer.buffer();
+            for (int i = 0; i < pages.size(); i++) {
+                if (ndjson) {
+                    chunk.appendString(project(pages.get(i).toJson(), fields).encode()).appendString("\n");
+                    continue;
+                }
+                if (!first || i > 0) {
+                    chunk.appendString(",");
+                }
+                chunk.appendString(project(pages.get(i).toJson(), fields).encode());
+            }
+            response.write(chunk);
+
+            Integer next = list.next();
+            if (next == null) {
+                response.end(ndjson ? "" : "]}");
+            } else if (response.writeQueueFull()) {
+                response.drainHandler(v -> streamPagesAfter(response, trace, next, fields, false, ndjson));
+            } else {
+                streamPagesAfter(response, trace, next, fields, false, ndjson);
+            }
+        }).onFailure(e -> {
+            LOGGER.error(e.getMessage());
+            response.reset();
+        });
+    }
+
+    private void apiTitles(RoutingContext context) {
+        int limit;
+        try {
+            limit = Integer.parseInt(queryParam(context, "limit", "10"));
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).putHeader("Content-Type", "application/json")
+                .end(new JsonObject().put("success", false).put("error", "Bad limit").encode());
+            return;
+        }
+        String prefix = queryParam(context, "prefix", "");
+        db(trace(context), "titles-by-prefix", db -> db.fetchTitlesByPrefix(prefix, limit)).compose(pages -> context.response()
+            .setStatusCode(200).putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("success", true).put("pages", pages.toJson()).encode()))
+            .onFailure(e -> respondFailure(context, e));
+    }
+
+    private void apiSearch(RoutingContext context) {
+        int limit;
+        try {
+            limit = Integer.parseInt(queryParam(context, "limit", "20"));
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).putHeader("Content-Type", "application/json")
+                .end(new JsonObject().put("success", false).put("error", "Bad limit").encode());
+            return;
+        }
+        String query = queryParam(context, "q", "");
+        db(trace(context), "search", db -> db.search(query, limit)).compose(pages -> context.response()
+            .setStatusCode(200).putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("success", true).put("pages", pages.toJson()).encode()))
+            .onFailure(e -> respondFailure(context, e));
+    }
+
+    private void apiRevisions(RoutingContext context) {
+        int id = Integer.parseInt(context.request().getParam("id"));
+        int limit;
+        int before;
+        try {
+            limit = Integer.parseInt(queryParam(context, "limit", "50"));
+            before = Integer.parseInt(queryParam(context, "before", String.valueOf(Integer.MAX_VALUE)));
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).putHeader("Content-Type", "application/json")
+                .end(new JsonObject().put("success", false).put("error", "Bad limit or cursor").encode());
+            return;
+        }
+        db(trace(context), "page-revisions", db -> db.fetchPageRevisions(id, before, limit)).compose(revisions -> context.response()
+            .setStatusCode(200).putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("success", true).put("revisions", revisions).encode()))
+            .onFailure(e -> respondFailure(context, e));
+    }
+
+    private void apiRevision(RoutingContext context) {
+        int id = Integer.parseInt(context.request().getParam("id"));
+        int number = Integer.parseInt(context.request().getParam("revision"));
+        db(trace(context), "get-page-revision", db -> db.fetchPageRevision(id, number)).compose(revision -> {
+            var payload = new JsonObject()
+                .put("id", revision.getInteger("id"))
+                .put("revision", revision.getInteger("revision"))
+                .put("created", revision.getString("created"))
+                .put("markdown", revision.getString("content"));
+            return context.response().setStatusCode(200).putHeader("Content-Type", "application/json")
+                // A past revision never changes
+                .putHeader("Cache-Control", "private, max-age=31536000, immutable")
+                .end(new JsonObject().put("success", true).put("revision", payload).encode());
+        }).onFailure(e -> respondFailure(context, e));
+    }
+
+    private JsonObject project(JsonObject page, List<String> fields) {
+        if (fields == PAGE_FIELDS) {
+            return page;
+        }
+        var projected = new JsonObject();
+        fields.forEach(field -> {
+            if (page.containsKey(field)) {
+                projected.put(field, page.getValue(field));
+            }
+        });
+        return projected;
+    }
+
+    private String queryParam(RoutingContext context, String name, String defaultValue) {
+        List<String> values = context.queryParam(name);
+        return values.isEmpty() ? defaultValue : values.get(0);
     }
 
     private void apiGetPage(RoutingContext context) {
         var id = Integer.parseInt(context.request().getParam("id"));
-        var options = new DeliveryOptions().addHeader("action", "get-page-by-id");
-        vertx.eventBus().request(wikiDbQueue, new JsonObject().put("id", id), options).compose(message -> {
-            JsonObject body = (JsonObject) message.body();
-            var response = new JsonObject();
-            if (body.getBoolean("found")) {
+        String ifNoneMatch = context.request().getHeader("If-None-Match");
+        Long known = pageVersions.get(id);
+        if (known != null && etagMatches(ifNoneMatch, known, true)) {
+            context.response().setStatusCode(304).putHeader("ETag", etag(known)).end();
+            return;
+        }
+
+        long generation = pageVersions.generation();
+        Trace trace = trace(context);
+        db(trace, "get-page-by-id", db -> db.fetchPageById(id)).compose(page -> {
+            long version = ContentHash.of(page.content());
+            if (!page.fromReplica()) {
+                pageVersions.fill(generation, id, version);
+            }
+            if (etagMatches(ifNoneMatch, version, true)) {
+                return context.response().setStatusCode(304).putHeader("ETag", etag(version)).end();
+            }
+            long renderStart = System.nanoTime();
+            return renderPage(id, page.content(), version).compose(html -> {
+                if (trace != null) {
+                    trace.spanSince("render", renderStart);
+                }
                 var payload = new JsonObject()
-                    .put("title", body.getString("title"))
-                    .put("id", body.getInteger("id"))
-                    .put("markdown", body.getString("content"))
-                    .put("html", Processor.process(body.getString("content")));
-                response.put("success", true).put("page", payload);
-                context.response().setStatusCode(200);
-            } else {
-                response.put("success", false).put("error", "There is no page with ID " + id);
-                context.response().setStatusCode(404);
+                    .put("title", page.title())
+                    .put("id", page.id())
+                    .put("markdown", page.content())
+                    .put("html", html);
+                return context.response().setStatusCode(200).putHeader("Content-Type", "application/json")
+                    .putHeader("ETag", etag(version))
+                    .end(new JsonObject().put("success", true).put("page", payload).encode());
+            });
+        }).onFailure(e -> {
+            if (e instanceof RenderException) {
+                respondRenderFailure(context, (RenderException) e);
+                return;
             }
-            return context.response().putHeader("Content-Type", "application/json").end(response.encode());
-        }).onFailure(e -> context.response().setStatusCode(500)
-            .putHeader("Content-Type", "application/json")
-            .end(new JsonObject().put("success", false).put("error", e.getMessage()).encode()));
+            respondFailure(context, e);
+        });
+    }
+
+    private Future<String> renderPage(int id, String markdown, long contentHash) {
+        String html = renderCache.get(id, contentHash);
+        if (html != null) {
+            return Future.succeededFuture(html);
+        }
+        return renderer.render(markdown).onSuccess(rendered -> renderCache.put(id, contentHash, rendered));
+    }
+
+    private void respondRenderFailure(RoutingContext context, RenderException e) {
+        var response = context.response();
+        if (e.reason() == RenderException.Reason.TOO_LARGE) {
+            response.setStatusCode(413);
+        } else {
+            response.setStatusCode(503).putHeader("Retry-After", "1");
+        }
+        response.putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("success", false).put("error", e.getMessage()).encode());
     }
 
     private boolean validateJsonPageDocument(RoutingContext context, JsonObject page, String... expectedKeys) {
-        if (!Arrays.stream(expectedKeys).allMatch(page::containsKey)) {
+        if (!Arrays.stream(expectedKeys).allMatch(key -> page.getValue(key) instanceof String)) {
             LOGGER.error("Bad page creation JSON payload: "
                 + page.encodePrettily() + " from " + context.request().remoteAddress());
             context.response().setStatusCode(400)
@@ -130,68 +717,201 @@ public class HttpServerVerticle extends AbstractVerticle {
         return true;
     }
 
-    private void handleSimpleRequest(RoutingContext context, JsonObject request, DeliveryOptions options, int code) {
-        vertx.eventBus().request(wikiDbQueue, request, options).compose(message -> context.response()
+    private boolean isNotFound(Throwable e) {
+        return e instanceof ReplyException && ((ReplyException) e).failureCode() == ErrorCode.NOT_FOUND.ordinal();
+    }
+
+    /**
+     * Whether the database did not answer in time or skipped the request because its caller had given up.
+     */
+    private boolean isOverloaded(Throwable e) {
+        return e instanceof ReplyException && (((ReplyException) e).failureType() == ReplyFailure.TIMEOUT
+            || ((ReplyException) e).failureCode() == ErrorCode.DEADLINE_EXCEEDED.ordinal());
+    }
+
+    /**
+     * Answers a failed database request with 404 for a missing page, 503 when the database is overloaded
+     * and 500 otherwise.
+     */
+    private void respondFailure(RoutingContext context, Throwable e) {
+        var response = context.response();
+        if (isOverloaded(e)) {
+            response.setStatusCode(503).putHeader("Retry-After", "1");
+        } else {
+            response.setStatusCode(isNotFound(e) ? 404 : 500);
+        }
+        response.putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("success", false).put("error", e.getMessage()).encode());
+    }
+
+    private void handleSimpleRequest(RoutingContext context, Future<Void> request, int code) {
+        handleSimpleRequest(context, request, code, () -> {
+        });
+    }
+
+    private void handleSimpleRequest(RoutingContext context, Future<Void> request, int code, Runnable onSuccess) {
+        request.onSuccess(v -> onSuccess.run()).compose(v -> context.response()
             .setStatusCode(code).putHeader("Content-Type", "application/json")
             .end(new JsonObject().put("success", true).encode()))
             .onFailure(e -> {
                 LOGGER.error(e.getMessage());
-                context.response().setStatusCode(500).putHeader("Content-Type", "application/json")
-                    .end(new JsonObject().put("success", false).put("error", e.getMessage()).encode());
+                respondFailure(context, e);
             });
     }
 
     private void apiToken(RoutingContext context) {
-        var request = new JsonObject().put("username", context.request().getParam("username"))
-            .put("password", context.request().getParam("password"));
-        var options = new DeliveryOptions().addHeader("action", "authenticate");
+        String username = context.request().getParam("username");
+        String password = context.request().getParam("password");
 
-        vertx.eventBus().request(wikiDbQueue, request, options).compose(message -> {
-            String token = jwtAuth.generateToken(new JsonObject().put("username", request.getString("username")),
+        credentialCache.check(username, password, () -> db(trace(context), "authenticate",
+            db -> db.authenticate(username, password))).onSuccess(found -> {
+            if (!found) {
+                context.response().setStatusCode(401).putHeader("Content-Type", "application/json")
+                    .end(new JsonObject().put("success", false).put("error", "Bad credentials").encode());
+                return;
+            }
+            String token = jwtAuth.generateToken(new JsonObject().put("username", username),
                 new JWTOptions().setSubject("Wiki Api").setIssuer("tstxxy")
+                    .setExpiresInMinutes(config().getInteger(CONFIG_HTTP_AUTH_TOKEN_EXPIRES_MINUTES, 60))
             );
-
-            return context.response().putHeader("Content-Type", "text/plain").end(token);
+            context.response().putHeader("Content-Type", "text/plain").end(token);
         }).onFailure(e -> {
-            context.fail(e.getCause());
             LOGGER.error(e.getMessage());
+            respondFailure(context, e);
         });
     }
 
+    /**
+     * Tags every live preview request with the sending socket and a per-socket sequence number, and
+     * rejects requests from sockets over their preview rate. Subscriptions to a page's saves carry page
+     * content, so they need the same bearer token as the API, sent as the {@code token} header of the
+     * register frame.
+     */
+    private void onBridgeEvent(BridgeEvent event) {
+        if (event.type() == BridgeEventType.SOCKET_CLOSED) {
+            previewThrottle.remove(event.socket().writeHandlerID());
+        } else if (event.type() == BridgeEventType.REGISTER && config().getBoolean(CONFIG_HTTP_AUTH_ENABLED, true)) {
+            String token = event.getRawMessage().getJsonObject("headers", new JsonObject()).getString("token");
+            if (token == null) {
+                event.complete(false);
+            } else {
+                jwtAuth.authenticate(new JsonObject().put("token", token), ar -> event.complete(ar.succeeded()));
+            }
+            return;
+        } else if (event.type() == BridgeEventType.PUBLISH) {
+            // Previews are requests answered to their sender, a publish would skip the throttle below
+            event.complete(false);
+            return;
+        } else if (event.type() == BridgeEventType.SEND
+            && "app.markdown".equals(event.getRawMessage().getString("address"))) {
+            String client = event.socket().writeHandlerID();
+            long seq = previewThrottle.admit(client);
+            if (seq < 0) {
+                event.complete(false);
+                return;
+            }
+            JsonObject message = event.getRawMessage();
+            JsonObject headers = message.getJsonObject("headers", new JsonObject())
+                .put("client", client)
+                .put("seq", String.valueOf(seq));
+            event.setRawMessage(message.put("headers", headers));
+        }
+        event.complete(true);
+    }
+
     private Router getRouter() {
         Router router = Router.router(vertx);
-        router.route().handler(BodyHandler.create());
+        BodyHandler bodyHandler = BodyHandler.create();
+        router.route().handler(context -> {
+            if (IMPORT_PATH.equals(context.request().path())) {
+                // Parsed as it arrives by apiImport, held until then
+                context.request().pause();
+                context.next();
+            } else {
+                bodyHandler.handle(context);
+            }
+        });
 
+        router.get("/app/*").handler(staticAssets::handle);
         router.get("/app/*").handler(StaticHandler.create().setCachingEnabled(false));
         router.get("/").handler(context -> context.reroute("/app/index.html"));
 
-        router.post("/app/markdown").handler(context -> {
-            String html = Processor.process(context.getBodyAsString());
-            context.response().putHeader("Content-Type", "text/html")
+        router.post("/app/markdown").handler(timed("POST /app/markdown", context -> incrementalRenderer.renderFull(context.getBodyAsString())
+            .onSuccess(html -> context.response().putHeader("Content-Type", "text/html")
                 .setStatusCode(200)
-                .end(html);
-        });
+                .end(html))
+            .onFailure(e -> {
+                if (e instanceof RenderException) {
+                    respondRenderFailure(context, (RenderException) e);
+                } else {
+                    context.fail(e);
+                }
+            })));
+        if (config().getBoolean(CONFIG_HTTP_AUTH_ENABLED, true)) {
+            // Trace ids and timings are operational data, not for anonymous clients
+            router.route("/admin/*").handler(JWTAuthHandler.create(jwtAuth));
+        }
+        router.get("/admin/traces").handler(context -> context.response()
+            .putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("success", true).put("traces", traceBuffer.snapshot()).encode()));
+        router.get("/metrics").handler(context -> context.response()
+            .putHeader("Content-Type", "text/plain; version=0.0.4")
+            .end(metrics.scrape()));
 
+        router.route("/api/*").handler(this::startTrace);
         Router apiRouter = Router.router(vertx);
-//        apiRouter.route("/pages").handler(JWTAuthHandler.create(jwtAuth));
-        apiRouter.get("/token").handler(this::apiToken);
-        apiRouter.get("/pages").handler(this::apiRoot);
-        apiRouter.get("/pages/:id").handler(this::apiGetPage);
-        apiRouter.post("/pages").handler(this::apiCreatePage);
-        apiRouter.put("/pages/:id").handler(this::apiUpdatePage);
-        apiRouter.delete("/pages/:id").handler(this::apiDeletePage);
+        if (config().getBoolean(CONFIG_HTTP_AUTH_ENABLED, true)) {
+            JWTAuthHandler authHandler = JWTAuthHandler.create(jwtAuth);
+            apiRouter.route("/pages*").handler(authHandler);
+            apiRouter.route("/search").handler(authHandler);
+        }
+        apiRouter.get("/token").handler(timed("GET /api/token", admitted(false, this::apiToken)));
+        apiRouter.get("/pages").handler(timed("GET /api/pages", admitted(false, this::apiRoot)));
+        apiRouter.get("/search").handler(timed("GET /api/search", admitted(false, this::apiSearch)));
+        apiRouter.get("/pages/export").handler(timed("GET /api/pages/export", admitted(false, this::apiExport)));
+        apiRouter.post("/pages/import").handler(timed("POST /api/pages/import", admitted(true, this::apiImport)));
+        apiRouter.get("/pages/titles").handler(timed("GET /api/pages/titles", admitted(false, this::apiTitles)));
+        apiRouter.get("/pages/:id").handler(timed("GET /api/pages/:id", admitted(false, this::apiGetPage)));
+        apiRouter.get("/pages/:id/revisions").handler(timed("GET /api/pages/:id/revisions", admitted(false, this::apiRevisions)));
+        apiRouter.get("/pages/:id/revisions/:revision").handler(timed("GET /api/pages/:id/revisions/:revision", admitted(false, this::apiRevision)));
+        apiRouter.post("/pages").handler(timed("POST /api/pages", admitted(true, this::apiCreatePage)));
+        apiRouter.put("/pages/:id").handler(timed("PUT /api/pages/:id", admitted(true, this::apiUpdatePage)));
+        apiRouter.delete("/pages/:id").handler(timed("DELETE /api/pages/:id", admitted(true, this::apiDeletePage)));
         router.mountSubRouter("/api", apiRouter);
 
-        SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
+        // The write handler ID keys each socket's preview throttle, it is null unless the handler is registered
+        SockJSHandler sockJSHandler = SockJSHandler.create(vertx, new SockJSHandlerOptions().setRegisterWriteHandler(true));
         SockJSBridgeOptions options = new SockJSBridgeOptions()
             .addInboundPermitted(new PermittedOptions().setAddress("app.markdown"))
-            .addOutboundPermitted(new PermittedOptions().setAddress("page.saved"));
-        sockJSHandler.bridge(options);
+            .addOutboundPermitted(new PermittedOptions().setAddressRegex(Pattern.quote(PAGE_SAVED_PREFIX) + "\\d+"));
+        sockJSHandler.bridge(options, this::onBridgeEvent);
 
         router.route("/eventbus/*").handler(sockJSHandler);
-        vertx.eventBus().<String>consumer("app.markdown", msg -> {
-            String html = Processor.process(msg.body());
-            msg.reply(html);
+        vertx.eventBus().consumer("app.markdown", msg -> {
+            String client = msg.headers().get("client");
+            long seq = client == null ? 0 : PreviewThrottle.parseSeq(msg.headers().get("seq"));
+            if (seq < 0) {
+                msg.fail(-1, "Invalid preview sequence number");
+                return;
+            }
+            BooleanSupplier superseded = () -> client != null && !previewThrottle.isLatest(client, seq);
+            if (superseded.getAsBoolean()) {
+                msg.fail(RenderException.Reason.SUPERSEDED.ordinal(), "Superseded by a newer preview request");
+                return;
+            }
+
+            Future<?> rendering;
+            if (msg.body() instanceof JsonObject) {
+                JsonObject request = (JsonObject) msg.body();
+                Set<String> known = new HashSet<>();
+                request.getJsonArray("known", new JsonArray()).forEach(id -> known.add((String) id));
+                rendering = incrementalRenderer.renderPatch(request.getString("markdown"), known, superseded);
+            } else {
+                rendering = incrementalRenderer.renderFull((String) msg.body(), superseded);
+            }
+            rendering.onSuccess(msg::reply)
+                .onFailure(e -> msg.fail(e instanceof RenderException ? ((RenderException) e).reason().ordinal() : -1,
+                    e.getMessage()));
         });
         return router;
     }
@@ -0,0 +1,107 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.database.Page;
+import icu.tstxxy.wiki.database.PageList;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEvent;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads pages from a stream of newline-delimited JSON objects with {@code title} and {@code content} and
+ * hands them to a writer in batches. The stream is paused while a batch is being written, so only one
+ * batch is held in memory whatever the size of the import.
+ * <p>
+ * Completes with the number of pages {@code imported} and {@code skipped}, as reported by the writer,
+ * and fails with an {@link IllegalArgumentException} at the first line that is not a page; the batches
+ * written before it are kept.
+ */
+class PageImport {
+    private final JsonParser parser;
+    private final int batchSize;
+    private final Function<PageList, Future<JsonObject>> writer;
+    private final Promise<JsonObject> result = Promise.promise();
+    private List<Page> batch;
+    private long line;
+    private long imported;
+    private long skipped;
+
+    PageImport(ReadStream<Buffer> body, int batchSize, Function<PageList, Future<JsonObject>> writer) {
+        this.parser = JsonParser.newParser(body).objectValueMode();
+        this.batchSize = batchSize;
+        this.writer = writer;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    Future<JsonObject> run() {
+        parser.exceptionHandler(e -> fail(new IllegalArgumentException("Line " + (line + 1) + " is not valid JSON")));
+        parser.endHandler(v -> write(true));
+        parser.handler(this::onEvent);
+        parser.resume();
+        return result.future();
+    }
+
+    private void onEvent(JsonEvent event) {
+        if (result.future().isComplete()) {
+            return;
+        }
+        line++;
+        Object value = event.value();
+        if (event.type() != JsonEventType.VALUE || !(value instanceof JsonObject)
+            || !(((JsonObject) value).getValue("title") instanceof String)
+            || !(((JsonObject) value).getValue("content") instanceof String)) {
+            fail(new IllegalArgumentException("Line " + line + " is not a page with a title and content"));
+            return;
+        }
+        JsonObject page = (JsonObject) value;
+        batch.add(new Page(0, page.getString("title"), page.getString("content")));
+        if (batch.size() >= batchSize) {
+            parser.pause();
+            write(false);
+        }
+    }
+
+    private void write(boolean last) {
+        if (result.future().isComplete()) {
+            return;
+        }
+        if (batch.isEmpty()) {
+            complete(last);
+            return;
+        }
+        PageList pages = new PageList(batch);
+        batch = new ArrayList<>(batchSize);
+        writer.apply(pages).onSuccess(counts -> {
+            imported += counts.getLong("imported", 0L);
+            skipped += counts.getLong("skipped", 0L);
+            complete(last);
+        }).onFailure(this::fail);
+    }
+
+    private void complete(boolean last) {
+        if (last) {
+            result.tryComplete(new JsonObject().put("imported", imported).put("skipped", skipped));
+        } else {
+            parser.resume();
+        }
+    }
+
+    long imported() {
+        return imported;
+    }
+
+    private void fail(Throwable e) {
+        if (result.tryFail(e)) {
+            // Drain the rest of the body without looking at it
+            parser.resume();
+        }
+    }
+}
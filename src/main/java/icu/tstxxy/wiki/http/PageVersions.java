@@ -0,0 +1,124 @@
+package icu.tstxxy.wiki.http;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Last known content version of each page, shared by the HTTP verticles so conditional requests can be
+ * answered without asking the database verticle.
+ * <p>
+ * Reads take a {@link #generation()} before fetching a page and only record its version with
+ * {@link #fill(long, int, long)} if that page was not written in the meantime; writes to other pages do not
+ * matter. Writes only {@link #invalidate(int)} the page, as responses may complete in another order than the
+ * commits. Conditional writes reserve the page with {@link #beginUpdate(long, int, long)} so two writers
+ * expecting the same version cannot both succeed.
+ * <p>
+ * At most {@code maxSize} pages are remembered, the least recently used ones being forgotten first.
+ */
+public class PageVersions implements Shareable {
+    private static final String LOCAL_MAP_NAME = "http.page.versions";
+
+    private final int maxSize;
+    // Forgotten pages stay as entries without a version, so reads started before their last write cannot fill them
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Integer> updating = new HashSet<>();
+    private long generation;
+    // Generation of the latest write among the evicted pages, which reads of pages not remembered must follow
+    private long evicted;
+
+    public PageVersions(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static PageVersions shared(Vertx vertx, int maxSize) {
+        LocalMap<String, PageVersions> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new PageVersions(maxSize));
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized Long get(int id) {
+        Entry entry = entries.get(id);
+        return entry == null ? null : entry.version;
+    }
+
+    public synchronized void fill(long expectedGeneration, int id, long version) {
+        if (!writtenSince(expectedGeneration, id)) {
+            put(id, new Entry(version, written(id)));
+        }
+    }
+
+    /**
+     * Reserves the page for a write expected to replace {@code expected}, the version read since
+     * {@code expectedGeneration}; fails if the page was written since, is known at another version, or another
+     * conditional write of it is in flight. A page not known yet is recorded at {@code expected}.
+     */
+    public synchronized boolean beginUpdate(long expectedGeneration, int id, long expected) {
+        if (updating.contains(id) || writtenSince(expectedGeneration, id)) {
+            return false;
+        }
+        Entry entry = entries.get(id);
+        if (entry != null && entry.version != null && entry.version != expected) {
+            return false;
+        }
+        updating.add(id);
+        put(id, new Entry(expected, written(id)));
+        return true;
+    }
+
+    /**
+     * Releases the reservation of a conditional write once it completed or failed, forgetting the version.
+     */
+    public synchronized void endUpdate(int id) {
+        updating.remove(id);
+        invalidate(id);
+    }
+
+    /**
+     * Forgets the version of a page because it was written or deleted.
+     */
+    public synchronized void invalidate(int id) {
+        put(id, new Entry(null, ++generation));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean writtenSince(long expectedGeneration, int id) {
+        return written(id) > expectedGeneration;
+    }
+
+    private long written(int id) {
+        Entry entry = entries.get(id);
+        return entry == null ? evicted : entry.written;
+    }
+
+    private void put(int id, Entry entry) {
+        entries.put(id, entry);
+        // A forgotten version is only a cache miss, even for a page being updated
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            evicted = Math.max(evicted, it.next().written);
+            it.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final Long version;
+        private final long written;
+
+        Entry(Long version, long written) {
+            this.version = version;
+            this.written = written;
+        }
+    }
+}
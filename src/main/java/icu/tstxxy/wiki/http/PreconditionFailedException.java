@@ -0,0 +1,12 @@
+package icu.tstxxy.wiki.http;
+
+/**
+ * Fails a conditional write whose {@code If-Match} does not match the current version of the page.
+ */
+class PreconditionFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    PreconditionFailedException() {
+        super("Precondition failed", null, false, false);
+    }
+}
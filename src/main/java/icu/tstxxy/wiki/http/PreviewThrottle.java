@@ -0,0 +1,86 @@
+package icu.tstxxy.wiki.http;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-client state of the live preview bridged over SockJS: a token bucket limiting how many render
+ * requests a client may send, and a sequence number so that renders superseded by a newer request
+ * from the same client can be dropped. Shared by every HTTP verticle through {@link #shared(Vertx, double, int)}.
+ */
+public class PreviewThrottle implements Shareable {
+    private static final String LOCAL_MAP_NAME = "http.preview.throttle";
+
+    private final double ratePerSecond;
+    private final int burst;
+    private final ConcurrentHashMap<String, Client> clients = new ConcurrentHashMap<>();
+
+    public PreviewThrottle(double ratePerSecond, int burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+    }
+
+    public static PreviewThrottle shared(Vertx vertx, double ratePerSecond, int burst) {
+        LocalMap<String, PreviewThrottle> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new PreviewThrottle(ratePerSecond, burst));
+    }
+
+    /**
+     * Admits a new render request from {@code client}, returning its sequence number, or -1 when the
+     * client is over its rate.
+     */
+    public long admit(String client) {
+        return clients.computeIfAbsent(client, k -> new Client(burst)).admit(ratePerSecond, burst);
+    }
+
+    public boolean isLatest(String client, long seq) {
+        Client state = clients.get(client);
+        return state == null || state.latest() == seq;
+    }
+
+    public void remove(String client) {
+        clients.remove(client);
+    }
+
+    /**
+     * Sequence number carried in a preview request's {@code seq} header, -1 if it is missing or malformed.
+     */
+    public static long parseSeq(String seq) {
+        if (seq == null) {
+            return -1;
+        }
+        try {
+            return Math.max(-1, Long.parseLong(seq));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Client {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private long latest;
+
+        Client(int burst) {
+            this.tokens = burst;
+        }
+
+        synchronized long admit(double ratePerSecond, int burst) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / 1e9);
+            refilledAt = now;
+            if (tokens < 1) {
+                return -1;
+            }
+            tokens -= 1;
+            return ++latest;
+        }
+
+        synchronized long latest() {
+            return latest;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.ContentHash;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.RoutingContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The web app, loaded into memory once at startup and shared by every HTTP verticle.
+ * <p>
+ * Every local asset referenced by the index page is also served under a fingerprinted name such as
+ * {@code /app/wiki.0123456789abcdef.js}, which the index page is rewritten to use, so those responses can
+ * be cached forever. The index page itself is revalidated with its ETag. Each asset is gzipped once when
+ * that makes it smaller and the compressed copy is sent to clients that accept it.
+ */
+public class StaticAssets implements Shareable {
+    private static final String LOCAL_MAP_NAME = "http.static.assets";
+    private static final Pattern LOCAL_REFERENCE = Pattern.compile("(src|href)=\"(/app/[^\"?#]+)\"");
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+        "html", "text/html; charset=utf-8",
+        "js", "application/javascript; charset=utf-8",
+        "css", "text/css; charset=utf-8");
+
+    private final Map<String, Asset> assets = new HashMap<>();
+
+    StaticAssets(String prefix, String index, Map<String, byte[]> files) {
+        Map<String, String> fingerprinted = new LinkedHashMap<>();
+        files.forEach((name, bytes) -> {
+            if (!name.equals(index)) {
+                Asset asset = Asset.of(bytes, contentType(name));
+                String path = prefix + fingerprint(name, asset.version);
+                assets.put(path, asset.immutable());
+                assets.put(prefix + name, asset);
+                fingerprinted.put(prefix + name, path);
+            }
+        });
+
+        String html = new String(files.get(index), StandardCharsets.UTF_8);
+        Matcher matcher = LOCAL_REFERENCE.matcher(html);
+        StringBuilder rewritten = new StringBuilder();
+        while (matcher.find()) {
+            String path = fingerprinted.getOrDefault(matcher.group(2), matcher.group(2));
+            matcher.appendReplacement(rewritten, Matcher.quoteReplacement(matcher.group(1) + "=\"" + path + "\""));
+        }
+        matcher.appendTail(rewritten);
+        assets.put(prefix + index, Asset.of(rewritten.toString().getBytes(StandardCharsets.UTF_8), contentType(index)));
+    }
+
+    /**
+     * Loads {@code index} from the {@code root} resource directory together with the local assets it references.
+     */
+    public static StaticAssets shared(Vertx vertx, String root, String prefix, String index) {
+        LocalMap<String, StaticAssets> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> {
+            Map<String, byte[]> files = new LinkedHashMap<>();
+            byte[] html = vertx.fileSystem().readFileBlocking(root + "/" + index).getBytes();
+            files.put(index, html);
+            Matcher matcher = LOCAL_REFERENCE.matcher(new String(html, StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                String name = matcher.group(2).substring(prefix.length());
+                files.put(name, vertx.fileSystem().readFileBlocking(root + "/" + name).getBytes());
+            }
+            return new StaticAssets(prefix, index, files);
+        });
+    }
+
+    /**
+     * Serves the asset at the request path, or passes the request on if there is none.
+     */
+    public void handle(RoutingContext context) {
+        Asset asset = assets.get(context.request().path());
+        if (asset == null) {
+            context.next();
+            return;
+        }
+
+        boolean gzip = asset.gzip != null && acceptsGzip(context.request().getHeader("Accept-Encoding"));
+        String etag = gzip ? asset.gzipEtag : asset.etag;
+        HttpServerResponse response = context.response()
+            .putHeader("Content-Type", asset.contentType)
+            .putHeader("ETag", etag)
+            .putHeader("Vary", "Accept-Encoding")
+            .putHeader("Cache-Control", asset.immutable ? "public, max-age=31536000, immutable" : "no-cache");
+        if (gzip) {
+            // Already as small as it gets, keep the dynamic compressor off it
+            response.putHeader("Content-Encoding", "gzip");
+        }
+        if (HttpServerVerticle.etagMatches(context.request().getHeader("If-None-Match"), etag, true)) {
+            response.setStatusCode(304).end();
+        } else {
+            response.end(Buffer.buffer(gzip ? asset.gzip : asset.bytes));
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header accepts gzip, explicitly or through {@code *}, with a non-zero quality.
+     */
+    static boolean acceptsGzip(String header) {
+        if (header == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String coding : header.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    quality = quality(param.substring(2));
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = quality;
+            } else if (name.equals("*")) {
+                any = quality;
+            }
+        }
+        return gzip != null ? gzip > 0 : any != null && any > 0;
+    }
+
+    private static double quality(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    String body(String path) {
+        Asset asset = assets.get(path);
+        return asset == null ? null : new String(asset.bytes, StandardCharsets.UTF_8);
+    }
+
+    boolean compressed(String path) {
+        return assets.get(path).gzip != null;
+    }
+
+    private static String fingerprint(String name, long version) {
+        int dot = name.lastIndexOf('.');
+        String hex = ContentHash.hex(version);
+        return dot < 0 ? name + "." + hex : name.substring(0, dot) + "." + hex + name.substring(dot);
+    }
+
+    private static String contentType(String name) {
+        return CONTENT_TYPES.getOrDefault(name.substring(name.lastIndexOf('.') + 1), "application/octet-stream");
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        var out = new ByteArrayOutputStream(bytes.length / 2);
+        try (var gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Asset {
+        final byte[] bytes;
+        final byte[] gzip;
+        final String contentType;
+        final long version;
+        final String etag;
+        final String gzipEtag;
+        final boolean immutable;
+
+        private Asset(byte[] bytes, byte[] gzip, String contentType, long version, boolean immutable) {
+            this.bytes = bytes;
+            this.gzip = gzip;
+            this.contentType = contentType;
+            this.version = version;
+            this.etag = "\"" + ContentHash.hex(version) + "\"";
+            // Each encoding is a representation of its own, so it needs its own strong ETag
+            this.gzipEtag = "\"" + ContentHash.hex(version) + "-gzip\"";
+            this.immutable = immutable;
+        }
+
+        static Asset of(byte[] bytes, String contentType) {
+            byte[] compressed = StaticAssets.gzip(bytes);
+            return new Asset(bytes, compressed.length < bytes.length ? compressed : null, contentType,
+                ContentHash.of(new String(bytes, StandardCharsets.ISO_8859_1)), false);
+        }
+
+        Asset immutable() {
+            return new Asset(bytes, gzip, contentType, version, true);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package icu.tstxxy.wiki.markdown;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Rendered HTML of individual markdown blocks keyed by the content hash of the block, bounded by an
+ * approximate byte budget and shared by every verticle through {@link #shared(Vertx, long)}. Entries keep the
+ * block text too, so a block whose hash collides with another's is a miss rather than the other's HTML.
+ */
+public class BlockCache implements Shareable {
+    private static final String LOCAL_MAP_NAME = "markdown.block.cache";
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Entry> blocks = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    public BlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static BlockCache shared(Vertx vertx, long maxBytes) {
+        LocalMap<String, BlockCache> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new BlockCache(maxBytes));
+    }
+
+    public synchronized String get(long hash, String block) {
+        Entry entry = blocks.get(hash);
+        return entry == null || !entry.block.equals(block) ? null : entry.html;
+    }
+
+    public synchronized void put(long hash, String block, String html) {
+        long weight = weigh(block, html);
+        if (weight > maxBytes) {
+            return;
+        }
+        Entry previous = blocks.put(hash, new Entry(block, html, weight));
+        if (previous != null) {
+            bytes -= previous.weight;
+        }
+        bytes += weight;
+
+        Iterator<Entry> it = blocks.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().weight;
+            it.remove();
+        }
+    }
+
+    private static long weigh(String block, String html) {
+        return 2L * (block.length() + html.length()) + 64;
+    }
+
+    private static final class Entry {
+        final String block;
+        final String html;
+        final long weight;
+
+        Entry(String block, String html, long weight) {
+            this.block = block;
+            this.html = html;
+            this.weight = weight;
+        }
+    }
+}
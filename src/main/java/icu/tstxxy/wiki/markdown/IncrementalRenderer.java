@@ -0,0 +1,169 @@
+package icu.tstxxy.wiki.markdown;
+
+import com.github.rjeschke.txtmark.Processor;
+import icu.tstxxy.wiki.ContentHash;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Live preview renderer that splits a document into top-level blocks and only runs txtmark on the
+ * blocks whose text is not in the {@link BlockCache} yet.
+ * <p>
+ * Blocks are cut at blank lines, except inside fenced code and where the next line continues the
+ * current block (indented text, a list followed by another item, a quote followed by more quote).
+ * Documents with link reference definitions or raw HTML are rendered as a single block because
+ * those constructs can span or affect other blocks.
+ */
+public class IncrementalRenderer {
+    private static final Pattern REFERENCE_DEFINITION = Pattern.compile("(?m)^ {0,3}\\[[^\\]]+\\]:");
+    private static final Pattern HTML_BLOCK = Pattern.compile("(?m)^ {0,3}<");
+    private static final Pattern LIST_ITEM = Pattern.compile("^ {0,3}([*+-]|\\d+\\.)\\s");
+
+    private final MarkdownRenderer renderer;
+    private final BlockCache cache;
+
+    public IncrementalRenderer(MarkdownRenderer renderer, BlockCache cache) {
+        this.renderer = renderer;
+        this.cache = cache;
+    }
+
+    public Future<String> renderFull(String markdown) {
+        return renderFull(markdown, () -> false);
+    }
+
+    /**
+     * Renders the whole document, giving up before any work if {@code superseded} reports that the
+     * result is no longer wanted by the time a worker picks the request up.
+     */
+    public Future<String> renderFull(String markdown, BooleanSupplier superseded) {
+        return renderer.preview(markdown, () -> {
+            checkSuperseded(superseded);
+            var html = new StringBuilder();
+            for (String block : splitBlocks(markdown)) {
+                html.append(renderBlock(ContentHash.of(block), block));
+            }
+            return html.toString();
+        });
+    }
+
+    /**
+     * Renders {@code markdown} as a list of {@code {id, html}} blocks, leaving out the HTML of the
+     * blocks the client reported as {@code known}.
+     */
+    public Future<JsonObject> renderPatch(String markdown, Collection<String> known) {
+        return renderPatch(markdown, known, () -> false);
+    }
+
+    public Future<JsonObject> renderPatch(String markdown, Collection<String> known, BooleanSupplier superseded) {
+        return renderer.preview(markdown, () -> {
+            checkSuperseded(superseded);
+            var blocks = new JsonArray();
+            for (String block : splitBlocks(markdown)) {
+                long hash = ContentHash.of(block);
+                String id = ContentHash.hex(hash);
+                var entry = new JsonObject().put("id", id);
+                if (!known.contains(id)) {
+                    entry.put("html", renderBlock(hash, block));
+                }
+                blocks.add(entry);
+            }
+            return new JsonObject().put("blocks", blocks);
+        });
+    }
+
+    /**
+     * Ids of the blocks of {@code markdown}, as listed by {@link #renderPatch}, without rendering them.
+     */
+    public static Set<String> blockIds(String markdown) {
+        Set<String> ids = new HashSet<>();
+        for (String block : splitBlocks(markdown)) {
+            ids.add(ContentHash.hex(ContentHash.of(block)));
+        }
+        return ids;
+    }
+
+    private static void checkSuperseded(BooleanSupplier superseded) {
+        if (superseded.getAsBoolean()) {
+            throw new RenderException(RenderException.Reason.SUPERSEDED, "Superseded by a newer preview request");
+        }
+    }
+
+    private String renderBlock(long hash, String block) {
+        String html = cache.get(hash, block);
+        if (html == null) {
+            html = Processor.process(block);
+            cache.put(hash, block, html);
+        }
+        return html;
+    }
+
+    static List<String> splitBlocks(String markdown) {
+        if (markdown == null || markdown.isEmpty()) {
+            return List.of();
+        }
+        if (REFERENCE_DEFINITION.matcher(markdown).find() || HTML_BLOCK.matcher(markdown).find()) {
+            return List.of(markdown);
+        }
+
+        List<String> blocks = new ArrayList<>();
+        var current = new StringBuilder();
+        String firstLine = null;
+        String fence = null;
+        boolean afterBlank = false;
+
+        for (String line : markdown.split("\n", -1)) {
+            if (fence != null) {
+                current.append(line).append('\n');
+                if (line.strip().startsWith(fence)) {
+                    fence = null;
+                }
+                continue;
+            }
+            if (line.isBlank()) {
+                afterBlank = firstLine != null;
+                if (afterBlank) {
+                    current.append('\n');
+                }
+                continue;
+            }
+            if (afterBlank && !continues(firstLine, line)) {
+                blocks.add(current.toString().stripTrailing() + "\n");
+                current.setLength(0);
+                firstLine = null;
+            }
+            if (firstLine == null) {
+                firstLine = line;
+            }
+            afterBlank = false;
+            current.append(line).append('\n');
+
+            String stripped = line.strip();
+            if (stripped.startsWith("```") || stripped.startsWith("~~~")) {
+                fence = stripped.substring(0, 3);
+            }
+        }
+        if (firstLine != null) {
+            blocks.add(current.toString().stripTrailing() + "\n");
+        }
+        return blocks;
+    }
+
+    private static boolean continues(String firstLine, String line) {
+        if (line.startsWith(" ") || line.startsWith("\t")) {
+            return true;
+        }
+        if (LIST_ITEM.matcher(firstLine).find() && LIST_ITEM.matcher(line).find()) {
+            return true;
+        }
+        return firstLine.strip().startsWith(">") && line.strip().startsWith(">");
+    }
+}
@@ -0,0 +1,124 @@
+package icu.tstxxy.wiki.markdown;
+
+import com.github.rjeschke.txtmark.Processor;
+import icu.tstxxy.wiki.metrics.Counter;
+import icu.tstxxy.wiki.metrics.Histogram;
+import icu.tstxxy.wiki.metrics.MetricsRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Renders markdown on a dedicated worker pool so large documents never run on an event loop.
+ * <p>
+ * At most {@code maxQueued} renders may be running or waiting for this renderer; further requests fail
+ * fast with {@link RenderException.Reason#SATURATED}. A render that does not finish within the timeout
+ * fails its caller, but keeps its slot until the worker is actually done with it.
+ */
+public class MarkdownRenderer {
+    private static final String POOL_NAME = "markdown-render";
+
+    private final Vertx vertx;
+    private final WorkerExecutor executor;
+    private final int maxQueued;
+    private final long timeoutMs;
+    private final int maxChars;
+    private final AtomicInteger queued = new AtomicInteger();
+    private Histogram renderTime = new Histogram();
+    private Counter saturated = new Counter();
+    private Counter timedOut = new Counter();
+    private Counter tooLarge = new Counter();
+    private Counter queuedMetric = new Counter();
+
+    public MarkdownRenderer(Vertx vertx, int poolSize, int maxQueued, long timeoutMs, int maxChars) {
+        this.vertx = vertx;
+        this.executor = vertx.createSharedWorkerExecutor(POOL_NAME, poolSize, timeoutMs, TimeUnit.MILLISECONDS);
+        this.maxQueued = maxQueued;
+        this.timeoutMs = timeoutMs;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Renders a document submitted for preview, rejecting it if it is over the size limit.
+     */
+    public Future<String> preview(String markdown) {
+        return preview(markdown, () -> Processor.process(markdown));
+    }
+
+    /**
+     * Runs a preview task for {@code markdown} on the render pool, rejecting it if the document is over the size limit.
+     */
+    public <T> Future<T> preview(String markdown, Supplier<T> task) {
+        if (markdown != null && markdown.length() > maxChars) {
+            tooLarge.increment();
+            return Future.failedFuture(new RenderException(RenderException.Reason.TOO_LARGE,
+                "Markdown documents are limited to " + maxChars + " characters"));
+        }
+        return execute(task);
+    }
+
+    public Future<String> render(String markdown) {
+        return execute(() -> Processor.process(markdown));
+    }
+
+    public <T> Future<T> execute(Supplier<T> task) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            saturated.increment();
+            return Future.failedFuture(new RenderException(RenderException.Reason.SATURATED,
+                "Markdown rendering is saturated"));
+        }
+
+        queuedMetric.increment();
+        Promise<T> promise = Promise.promise();
+        long timerId = vertx.setTimer(timeoutMs, t -> {
+            if (promise.tryFail(new RenderException(RenderException.Reason.TIMEOUT, "Markdown rendering timed out"))) {
+                timedOut.increment();
+            }
+        });
+        executor.<T>executeBlocking(p -> {
+            long start = System.nanoTime();
+            try {
+                p.complete(task.get());
+            } finally {
+                renderTime.recordSince(start);
+            }
+        }, false).onComplete(ar -> {
+            queued.decrementAndGet();
+            queuedMetric.decrement();
+            vertx.cancelTimer(timerId);
+            if (ar.succeeded()) {
+                promise.tryComplete(ar.result());
+            } else {
+                promise.tryFail(ar.cause());
+            }
+        });
+        return promise.future();
+    }
+
+    /**
+     * Reports render times, rejections and the queue depth of this renderer in {@code metrics}.
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        renderTime = metrics.histogram("wiki_render_seconds", "Time spent rendering markdown on the render pool");
+        String rejected = "wiki_render_rejected_total";
+        String help = "Render requests failed without a result, by reason";
+        saturated = metrics.counter(rejected, help, "reason", "saturated");
+        timedOut = metrics.counter(rejected, help, "reason", "timeout");
+        tooLarge = metrics.counter(rejected, help, "reason", "too_large");
+        queuedMetric = metrics.gauge("wiki_render_queued", "Renders running or waiting on the render pool");
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    public Future<Void> close() {
+        return executor.close();
+    }
+}
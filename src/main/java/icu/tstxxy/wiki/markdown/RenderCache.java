@@ -0,0 +1,107 @@
+package icu.tstxxy.wiki.markdown;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rendered HTML of wiki pages keyed by page id and content hash, bounded by an approximate byte budget.
+ * One instance is shared by every verticle of a Vert.x instance through {@link #shared(Vertx, long)}.
+ */
+public class RenderCache implements Shareable {
+    private static final String LOCAL_MAP_NAME = "markdown.render.cache";
+
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static RenderCache shared(Vertx vertx, long maxBytes) {
+        LocalMap<String, RenderCache> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new RenderCache(maxBytes));
+    }
+
+    public synchronized String get(int id, long contentHash) {
+        Entry entry = entries.get(id);
+        if (entry == null || entry.contentHash != contentHash) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.html;
+    }
+
+    public synchronized void put(int id, long contentHash, String html) {
+        long weight = weigh(html);
+        if (weight > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(id, new Entry(contentHash, html, weight));
+        if (previous != null) {
+            bytes -= previous.weight;
+        }
+        bytes += weight;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().weight;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        Entry removed = entries.remove(id);
+        if (removed != null) {
+            bytes -= removed.weight;
+        }
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private static long weigh(String html) {
+        // chars are two bytes, plus a rough allowance for the entry and map node
+        return 2L * html.length() + 64;
+    }
+
+    private static final class Entry {
+        final long contentHash;
+        final String html;
+        final long weight;
+
+        Entry(long contentHash, String html, long weight) {
+            this.contentHash = contentHash;
+            this.html = html;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package icu.tstxxy.wiki.markdown;
+
+public class RenderException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        TOO_LARGE,
+        SATURATED,
+        TIMEOUT,
+        SUPERSEDED,
+    }
+
+    private final Reason reason;
+
+    public RenderException(Reason reason, String message) {
+        super(message, null, false, false);
+        this.reason = reason;
+    }
+
+    public Reason reason() {
+        return reason;
+    }
+}
@@ -0,0 +1,32 @@
+package icu.tstxxy.wiki.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter or up/down gauge backed by a {@link LongAdder}.
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Creates a metric that is not exposed by any registry.
+     */
+    public Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void decrement() {
+        value.decrement();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
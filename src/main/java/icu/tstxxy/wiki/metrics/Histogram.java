@@ -0,0 +1,61 @@
+package icu.tstxxy.wiki.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets. Recording is lock-free and does not allocate.
+ */
+public class Histogram {
+    static final double[] BUCKETS_SECONDS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10,
+    };
+    static final String[] BUCKET_LABELS = new String[BUCKETS_SECONDS.length];
+    private static final long[] BUCKETS_NANOS = new long[BUCKETS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+            BUCKETS_NANOS[i] = (long) (BUCKETS_SECONDS[i] * 1e9);
+            BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKETS_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Creates a metric that is not exposed by any registry.
+     */
+    public Histogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BUCKETS_NANOS.length && nanos > BUCKETS_NANOS[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    long[] cumulativeCounts() {
+        long[] cumulative = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i].sum();
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    double sumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+}
@@ -0,0 +1,128 @@
+package icu.tstxxy.wiki.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics of every verticle of a Vert.x instance, rendered in the Prometheus text exposition format.
+ * <p>
+ * Metrics are looked up once, when a verticle starts, and the returned {@link Histogram} and
+ * {@link Counter} instances are kept by the caller so recording never touches the registry.
+ * Looking up the same name and labels again returns the same instance.
+ */
+public class MetricsRegistry implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wiki.metrics";
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry shared(Vertx vertx) {
+        LocalMap<String, MetricsRegistry> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new MetricsRegistry());
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").metrics.computeIfAbsent(labels(labels), k -> new Histogram());
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").metrics.computeIfAbsent(labels(labels), k -> new Counter());
+    }
+
+    public Counter gauge(String name, String help, String... labels) {
+        return (Counter) family(name, help, "gauge").metrics.computeIfAbsent(labels(labels), k -> new Counter());
+    }
+
+    /**
+     * Registers a gauge read from {@code value} at scrape time, unless one is already registered under these labels.
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").metrics.putIfAbsent(labels(labels), value);
+    }
+
+    /**
+     * Registers a counter read from {@code value} at scrape time, unless one is already registered under these labels.
+     */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").metrics.putIfAbsent(labels(labels), value);
+    }
+
+    public String scrape() {
+        var out = new StringBuilder(4096);
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.metrics.forEach((labels, metric) -> {
+                if (metric instanceof Histogram) {
+                    writeHistogram(out, name, labels, (Histogram) metric);
+                } else if (metric instanceof Counter) {
+                    sample(out, name, labels, ((Counter) metric).get());
+                } else {
+                    sample(out, name, labels, ((DoubleSupplier) metric).getAsDouble());
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        var out = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            out.append(out.length() == 0 ? "" : ",").append(labels[i]).append("=\"")
+                .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] counts = histogram.cumulativeCounts();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < Histogram.BUCKET_LABELS.length; i++) {
+            sample(out, name + "_bucket", prefix + "le=\"" + Histogram.BUCKET_LABELS[i] + "\"", counts[i]);
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", counts[counts.length - 1]);
+        sample(out, name + "_sum", labels, histogram.sumSeconds());
+        sample(out, name + "_count", labels, counts[counts.length - 1]);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
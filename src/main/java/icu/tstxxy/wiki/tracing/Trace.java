@@ -0,0 +1,106 @@
+package icu.tstxxy.wiki.tracing;
+
+import icu.tstxxy.wiki.ContentHash;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Span timings of one request. Spans are recorded with {@link System#nanoTime()} so stages measured by
+ * other verticles of the same process can be merged in through {@link #SPANS_HEADER}.
+ * <p>
+ * Not thread safe: a trace belongs to the event loop that handles the request.
+ */
+public class Trace {
+    public static final String ID_HEADER = "trace-id";
+    public static final String SENT_AT_HEADER = "trace-sent-at";
+    public static final String SPANS_HEADER = "trace-spans";
+
+    private final String id;
+    private final long start;
+    private final List<Span> spans = new ArrayList<>(8);
+
+    public Trace(String id, long start) {
+        this.id = id;
+        this.start = start;
+    }
+
+    public static Trace start(String id) {
+        return new Trace(id != null ? id : ContentHash.hex(ThreadLocalRandom.current().nextLong()), System.nanoTime());
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    public void span(String name, long startNanos, long endNanos) {
+        spans.add(new Span(name, startNanos, endNanos));
+    }
+
+    public void spanSince(String name, long startNanos) {
+        span(name, startNanos, System.nanoTime());
+    }
+
+    /**
+     * Encodes the spans for {@link #SPANS_HEADER} as {@code name=start-end} pairs separated by commas.
+     */
+    public String encodeSpans() {
+        var out = new StringBuilder();
+        for (Span span : spans) {
+            out.append(out.length() == 0 ? "" : ",").append(span.name).append('=').append(span.start)
+                .append('-').append(span.end);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Adds the spans encoded by {@link #encodeSpans()}; a missing or malformed header is ignored.
+     */
+    public void decodeSpans(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        try {
+            for (String span : encoded.split(",")) {
+                int eq = span.indexOf('=');
+                int dash = span.indexOf('-', eq + 2);
+                span(span.substring(0, eq), Long.parseLong(span.substring(eq + 1, dash)),
+                    Long.parseLong(span.substring(dash + 1)));
+            }
+        } catch (RuntimeException e) {
+            // Spans are diagnostics only
+        }
+    }
+
+    public JsonObject toJson() {
+        var json = new JsonArray();
+        spans.forEach(span -> json.add(new JsonObject()
+            .put("name", span.name)
+            .put("startMs", millis(span.start - start))
+            .put("durationMs", millis(span.end - span.start))));
+        return new JsonObject().put("id", id).put("durationMs", millis(elapsedNanos())).put("spans", json);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static final class Span {
+        final String name;
+        final long start;
+        final long end;
+
+        Span(String name, long start, long end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
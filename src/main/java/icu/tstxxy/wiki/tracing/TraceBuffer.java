@@ -0,0 +1,48 @@
+package icu.tstxxy.wiki.tracing;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayDeque;
+
+/**
+ * The most recent slow request traces of every verticle, shared through {@link #shared(Vertx, int)}.
+ */
+public class TraceBuffer implements Shareable {
+    private static final String LOCAL_MAP_NAME = "wiki.traces";
+
+    private final int capacity;
+    private final ArrayDeque<String> traces;
+
+    public TraceBuffer(int capacity) {
+        this.capacity = capacity;
+        this.traces = new ArrayDeque<>(capacity);
+    }
+
+    public static TraceBuffer shared(Vertx vertx, int capacity) {
+        LocalMap<String, TraceBuffer> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return map.computeIfAbsent(LOCAL_MAP_NAME, k -> new TraceBuffer(capacity));
+    }
+
+    public synchronized void add(JsonObject trace) {
+        if (capacity <= 0) {
+            return;
+        }
+        if (traces.size() == capacity) {
+            traces.removeFirst();
+        }
+        traces.addLast(trace.encode());
+    }
+
+    /**
+     * Returns the buffered traces, newest first.
+     */
+    public synchronized JsonArray snapshot() {
+        var json = new JsonArray();
+        traces.descendingIterator().forEachRemaining(trace -> json.add(new JsonObject(trace)));
+        return json;
+    }
+}
@@ -10,13 +10,47 @@ function generateUUID() {
 }
 
 angular.module("wikiApp", [])
+    .factory("authInterceptor", ["$q", "$injector", function ($q, $injector) {
+        return {
+            request: function (config) {
+                let token = localStorage.getItem("wikiToken");
+                if (token && config.url.startsWith("/api/pages")) {
+                    config.headers.Authorization = "Bearer " + token;
+                }
+                return config;
+            },
+            responseError: function (response) {
+                if (response.status !== 401 || response.config.retried || response.config.url === "/api/token") {
+                    return $q.reject(response);
+                }
+                localStorage.removeItem("wikiToken");
+                let username = window.prompt("Username");
+                let password = username && window.prompt("Password");
+                if (!password) {
+                    return $q.reject(response);
+                }
+                let $http = $injector.get("$http");
+                return $http.get("/api/token", {params: {username: username, password: password}}).then(function (token) {
+                    localStorage.setItem("wikiToken", token.data);
+                    response.config.retried = true;
+                    return $http(response.config);
+                });
+            }
+        };
+    }])
+    .config(["$httpProvider", function ($httpProvider) {
+        $httpProvider.interceptors.push("authInterceptor");
+    }])
     .controller("WikiController", ["$scope", "$http", "$timeout", function ($scope, $http, $timeout) {
 
         let DEFAULT_PAGENAME = "Example page";
         let DEFAULT_MARKDOWN = "# Example page\n\nSome text _here_.\n";
+        // Markdown of the revision identified by pageETag, to tell local edits apart and apply pushed diffs to
+        let pageBase;
 
         $scope.newPage = function () {
             $scope.pageId = undefined;
+            $scope.pageETag = undefined;
             $scope.pageName = DEFAULT_PAGENAME;
             $scope.pageMarkdown = DEFAULT_MARKDOWN;
         };
@@ -41,9 +75,11 @@ angular.module("wikiApp", [])
             $scope.pageModified = false;
             $http.get("/api/pages/" + id).then(function (response) {
                 let page = response.data.page;
+                $scope.pageETag = response.headers("ETag");
                 $scope.pageId = page.id;
                 $scope.pageName = page.name;
                 $scope.pageMarkdown = page.markdown;
+                pageBase = page.markdown;
                 $scope.updateRendering(page.html);
             });
         };
@@ -74,7 +110,10 @@ angular.module("wikiApp", [])
                     "client": clientUuid,
                     "markdown": $scope.pageMarkdown
                 };
-                $http.put("/api/pages/" + $scope.pageId, payload).then(function (ok) {
+                let config = $scope.pageETag ? {headers: {"If-Match": $scope.pageETag}} : {};
+                $http.put("/api/pages/" + $scope.pageId, payload, config).then(function (ok) {
+                    $scope.pageETag = ok.headers("ETag");
+                    pageBase = payload.markdown;
                     $scope.success("Page saved");
                 }, function (err) {
                     $scope.error(err.data.error);
@@ -117,21 +156,36 @@ angular.module("wikiApp", [])
         $scope.reload();
         $scope.newPage();
 
+        // RenderException.Reason.SUPERSEDED: a newer preview from this page is already being rendered
+        let PREVIEW_SUPERSEDED = 3;
         let markdownRenderingPromise = null;
+        let renderedBlocks = {};
+        // Markdown whose rendering came with a pushed diff, so it needs no preview
+        let renderedMarkdown = null;
         $scope.$watch("pageMarkdown", function (text) {
-            if (eb.state !== EventBus.OPEN) return;
+            if (eb.state !== EventBus.OPEN || text === renderedMarkdown) return;
             if (markdownRenderingPromise !== null) {
                 $timeout.cancel(markdownRenderingPromise);
             }
             markdownRenderingPromise = $timeout(function () {
                 markdownRenderingPromise = null;
                 // tag::eventbus-markdown-sender[]
-                eb.send("app.markdown", text, function (err, reply) { // <1>
+                let request = {
+                    "markdown": text,
+                    "known": Object.keys(renderedBlocks)
+                };
+                eb.send("app.markdown", request, function (err, reply) { // <1>
                     if (err === null) {
+                        let blocks = {};
+                        let html = reply.body.blocks.map(function (block) {
+                            blocks[block.id] = block.html !== undefined ? block.html : renderedBlocks[block.id];
+                            return blocks[block.id];
+                        }).join("");
+                        renderedBlocks = blocks;
                         $scope.$apply(function () { // <2>
-                            $scope.updateRendering(reply.body); // <3>
+                            $scope.updateRendering(html); // <3>
                         });
-                    } else {
+                    } else if (err.failureCode !== PREVIEW_SUPERSEDED) {
                         console.warn("Error rendering Markdown content: " + JSON.stringify(err));
                     }
                 });
@@ -139,22 +193,72 @@ angular.module("wikiApp", [])
             }, 300);
         });
 
+        // Applies a diff pushed by a save when this page has no local edits and is at the revision it starts from
+        let applyPageDiff = function (event) {
+            let etag = $scope.pageETag && $scope.pageETag.replace(/^W\//, "");
+            if (!event.delta || event.base !== etag || $scope.pageMarkdown !== pageBase) {
+                return false;
+            }
+            let delta = event.delta;
+            let markdown = pageBase.substring(0, delta.prefix) + delta.text
+                + pageBase.substring(pageBase.length - delta.suffix);
+            pageBase = markdown;
+            $scope.pageMarkdown = markdown;
+            $scope.pageETag = event.etag;
+            if (event.blocks) {
+                // The HTML of blocks the previous revision had is left out, the last preview rendered them
+                let blocks = {};
+                let complete = event.blocks.every(function (block) {
+                    blocks[block.id] = block.html !== undefined ? block.html : renderedBlocks[block.id];
+                    return blocks[block.id] !== undefined;
+                });
+                if (complete) {
+                    renderedBlocks = blocks;
+                    renderedMarkdown = markdown;
+                    $scope.updateRendering(event.blocks.map(function (block) {
+                        return blocks[block.id];
+                    }).join(""));
+                }
+            }
+            return true;
+        };
+
         // tag::event-bus-js-setup[]
         let eb = new EventBus(window.location.protocol + "//" + window.location.host + "/eventbus");
         // end::event-bus-js-setup[]
         // tag::register-page-saved-handler[]
         let clientUuid = generateUUID(); // <1>
+        let onPageSaved = function (error, message) {
+            if (message && message.body // <2>
+                && $scope.pageId === message.body.id
+                && clientUuid !== message.body.client) { // <3>
+                $scope.$apply(function () { // <4>
+                    if (!applyPageDiff(message.body)) {
+                        $scope.pageModified = true; // <5>
+                    }
+                });
+            }
+        };
+        // Saves are published on a per-page address, so only the page being shown is followed
+        let followedAddress = null;
+        let followPage = function (id) { // <6>
+            if (eb.state !== EventBus.OPEN) return;
+            let address = id === undefined ? null : "page.saved." + id;
+            if (address === followedAddress) return;
+            if (followedAddress !== null) {
+                eb.unregisterHandler(followedAddress, onPageSaved);
+            }
+            if (address !== null) {
+                // The bridge checks the same token as the API before letting page content through
+                eb.registerHandler(address, {"token": localStorage.getItem("wikiToken")}, onPageSaved);
+            }
+            followedAddress = address;
+        };
         eb.onopen = function () {
-            eb.registerHandler("page.saved", function (error, message) { // <2>
-                if (message.body // <3>
-                    && $scope.pageId === message.body.id // <4>
-                    && clientUuid !== message.body.client) { // <5>
-                    $scope.$apply(function () { // <6>
-                        $scope.pageModified = true; // <7>
-                    });
-                }
-            });
+            followedAddress = null;
+            followPage($scope.pageId);
         };
+        $scope.$watch("pageId", followPage);
         // end::register-page-saved-handler[]
 
     }]);
@@ -0,0 +1,29 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class LocalDatabaseServiceTest {
+
+    @Test
+    void every_save_of_a_page_goes_to_the_same_instance() {
+        Vertx vertx = Vertx.vertx();
+        DatabaseVerticle first = new DatabaseVerticle();
+        DatabaseVerticle second = new DatabaseVerticle();
+        assertNull(LocalDatabaseService.owner(vertx, "wikidb.queue", 1));
+
+        LocalDatabaseService.register(vertx, "wikidb.queue", first);
+        LocalDatabaseService.register(vertx, "wikidb.queue", second);
+
+        assertSame(second, LocalDatabaseService.owner(vertx, "wikidb.queue", 1));
+        assertSame(second, LocalDatabaseService.owner(vertx, "wikidb.queue", 1));
+        assertSame(first, LocalDatabaseService.owner(vertx, "wikidb.queue", 2));
+        assertNotSame(LocalDatabaseService.owner(vertx, "wikidb.queue", 3),
+            LocalDatabaseService.owner(vertx, "wikidb.queue", 4));
+        vertx.close();
+    }
+}
@@ -0,0 +1,60 @@
+package icu.tstxxy.wiki.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PageCacheTest {
+
+    @Test
+    void reads_started_before_a_write_do_not_fill_the_cache() {
+        PageCache cache = new PageCache(1 << 20);
+        long generation = cache.generation();
+        cache.invalidate(1);
+
+        cache.put(generation, new Page(1, "Home", "stale"));
+        assertNull(cache.getById(1));
+        assertNull(cache.getByTitle("Home"));
+
+        var fresh = new Page(1, "Home", "fresh");
+        cache.put(cache.generation(), fresh);
+        assertSame(fresh, cache.getById(1));
+        assertSame(fresh, cache.getByTitle("Home"));
+    }
+
+    @Test
+    void the_title_list_is_dropped_by_writes_and_not_refilled_by_older_reads() {
+        PageCache cache = new PageCache(1 << 20);
+        long generation = cache.generation();
+        var titles = new PageList(List.of(new Page(1, "Home", null)));
+        cache.putTitles(generation, titles);
+        assertSame(titles, cache.titles());
+
+        cache.invalidateTitles();
+        assertNull(cache.titles());
+        cache.putTitles(generation, titles);
+        assertNull(cache.titles());
+    }
+
+    @Test
+    void evicts_the_least_recently_used_pages_beyond_its_budget() {
+        // Each page weighs 2 * 11 + 96 = 118 bytes, two fit
+        PageCache cache = new PageCache(300);
+        var first = new Page(1, "A", "0123456789");
+        var second = new Page(2, "B", "0123456789");
+        cache.put(cache.generation(), first);
+        cache.put(cache.generation(), second);
+        cache.getById(1);
+        cache.put(cache.generation(), new Page(3, "C", "0123456789"));
+
+        assertSame(first, cache.getById(1));
+        assertNull(cache.getById(2));
+        assertNull(cache.getByTitle("B"));
+
+        cache.put(cache.generation(), new Page(4, "D", "x".repeat(200)));
+        assertNull(cache.getById(4));
+    }
+}
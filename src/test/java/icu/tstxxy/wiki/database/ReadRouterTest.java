@@ -0,0 +1,117 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadRouterTest {
+    private final Pool primary = pool();
+    private final Pool first = pool();
+    private final Pool second = pool();
+    private final Counter fallbacks = new Counter();
+    private final Counter healthy = new Counter();
+    private final List<SqlClient> used = new ArrayList<>();
+
+    @Test
+    void reads_rotate_over_healthy_replicas_and_recent_writes_go_to_the_primary() {
+        RecentWrites recentWrites = new RecentWrites(60_000);
+        ReadRouter router = router(recentWrites);
+        Function<SqlClient, Future<RowSet<Row>>> query = db -> {
+            used.add(db);
+            return Future.succeededFuture();
+        };
+
+        router.readPage(1, query);
+        router.markHealthy(0, true);
+        router.markHealthy(1, true);
+        router.readPage(1, query);
+        router.readPage(1, query);
+        router.readAny(query);
+        recentWrites.written(1, System.currentTimeMillis());
+        router.readPage(1, query);
+        router.readPage(2, query);
+        router.readAny(query);
+
+        assertEquals(List.of(primary, first, second, first, primary, second, primary), used);
+        assertEquals(2, healthy.get());
+    }
+
+    @Test
+    void a_replica_failing_a_read_is_left_out_and_the_read_retried_on_the_primary() {
+        ReadRouter router = router(new RecentWrites(60_000));
+        router.markHealthy(0, true);
+        router.markHealthy(1, true);
+        Function<SqlClient, Future<RowSet<Row>>> query = db -> {
+            used.add(db);
+            return db == first ? Future.failedFuture("connection refused") : Future.succeededFuture();
+        };
+
+        var fallback = router.readPage(1, query);
+        assertTrue(fallback.succeeded());
+        assertFalse(fallback.result().fromReplica());
+        assertTrue(router.readPage(1, query).result().fromReplica());
+        router.readPage(1, query);
+
+        assertEquals(List.of(first, primary, second, second), used);
+        assertEquals(1, fallbacks.get());
+        assertEquals(1, healthy.get());
+    }
+
+    @Test
+    void writes_stay_recent_for_the_window() {
+        RecentWrites recentWrites = new RecentWrites(1000);
+        recentWrites.written(1, 0);
+
+        assertTrue(recentWrites.isRecent(1, 999));
+        assertFalse(recentWrites.isRecent(2, 999));
+        assertFalse(recentWrites.isRecent(1, 1000));
+        assertFalse(recentWrites.anyRecent(1000));
+
+        recentWrites.written(2, 5000);
+        assertTrue(recentWrites.anyRecent(5999));
+        assertEquals(1, recentWrites.size());
+    }
+
+    @Test
+    void routers_share_the_replica_health_and_one_check_per_interval() {
+        ReplicaHealth health = new ReplicaHealth(2, healthy);
+        ReadRouter one = router(health, new RecentWrites(60_000));
+        ReadRouter other = router(health, new RecentWrites(60_000));
+
+        one.markHealthy(1, true);
+        other.markHealthy(1, true);
+        assertEquals(1, healthy.get());
+        assertEquals(1, other.nextHealthy());
+
+        assertTrue(health.claimCheck(0, 5000));
+        assertFalse(health.claimCheck(4999, 5000));
+        assertTrue(health.claimCheck(5000, 5000));
+    }
+
+    private ReadRouter router(RecentWrites recentWrites) {
+        return router(new ReplicaHealth(2, healthy), recentWrites);
+    }
+
+    private ReadRouter router(ReplicaHealth health, RecentWrites recentWrites) {
+        return new ReadRouter(primary, List.of(first, second), health, recentWrites, new Counter(), new Counter(),
+            fallbacks);
+    }
+
+    private static Pool pool() {
+        return (Pool) Proxy.newProxyInstance(Pool.class.getClassLoader(), new Class<?>[]{Pool.class},
+            (p, method, args) -> method.getName().equals("equals") ? p == args[0] : null);
+    }
+}
@@ -0,0 +1,57 @@
+package icu.tstxxy.wiki.database;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RevisionDeltaTest {
+
+    @Test
+    void keeps_only_the_edited_region() {
+        RevisionDelta delta = RevisionDelta.between("# Title\n\nSome text here.\n", "# Title\n\nSome other text here.\n");
+
+        assertEquals(14, delta.prefixLength());
+        assertEquals(11, delta.suffixLength());
+        assertEquals("other ", delta.middle());
+        assertEquals("# Title\n\nSome other text here.\n", delta.applyTo("# Title\n\nSome text here.\n"));
+    }
+
+    @Test
+    void round_trips_insertions_deletions_and_repeats() {
+        String[][] cases = {
+            {"", "new page"},
+            {"old page", ""},
+            {"aaaa", "aaaaaa"},
+            {"abcabc", "abc"},
+            {"same", "same"},
+            {"prefix only", "prefix"},
+            {"only suffix", "suffix"},
+        };
+        for (String[] c : cases) {
+            assertEquals(c[1], RevisionDelta.between(c[0], c[1]).applyTo(c[0]));
+        }
+    }
+
+    @Test
+    void does_not_split_surrogate_pairs() {
+        String before = "a😀b";
+        String after = "a😁b";
+        RevisionDelta delta = RevisionDelta.between(before, after);
+
+        assertEquals("😁", delta.middle());
+        assertEquals(after, delta.applyTo(before));
+    }
+
+    @Test
+    void heads_keep_the_latest_revision_within_budget() {
+        RevisionHeads heads = new RevisionHeads(200);
+        heads.put(1, 3, "three");
+        heads.put(1, 2, "two");
+        assertEquals(3, heads.get(1).revision());
+
+        heads.put(2, 1, "x".repeat(60));
+        assertNull(heads.get(1));
+        assertEquals(1, heads.get(2).revision());
+    }
+}
@@ -0,0 +1,82 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class SaveBatcherTest {
+
+    @Test
+    void coalesces_saves_of_the_same_page(Vertx vertx, VertxTestContext testContext) {
+        List<Map<Integer, String>> batches = new ArrayList<>();
+        vertx.runOnContext(v -> {
+            SaveBatcher batcher = new SaveBatcher(vertx, 10, 100, pages -> {
+                batches.add(pages);
+                Map<Integer, SavedPage> saved = new HashMap<>();
+                pages.keySet().forEach(id -> saved.put(id, new SavedPage(id * 10, null, null)));
+                return Future.succeededFuture(saved);
+            });
+
+            Future<SavedPage> first = batcher.save(1, "a");
+            Future<SavedPage> other = batcher.save(2, "b");
+            Future<SavedPage> last = batcher.save(1, "c");
+            CompositeFuture.all(first, other, last)
+                .onComplete(testContext.succeeding(f -> testContext.verify(() -> {
+                    assertEquals(1, batches.size());
+                    assertEquals(Map.of(1, "c", 2, "b"), batches.get(0));
+                    assertEquals(1.5, batcher.coalescingRatio());
+                    assertTrue(first.result().superseded());
+                    assertEquals(20, other.result().revision());
+                    assertEquals(10, last.result().revision());
+                    testContext.completeNow();
+                })));
+        });
+    }
+
+    @Test
+    void fails_every_waiter_of_a_failed_batch(Vertx vertx, VertxTestContext testContext) {
+        vertx.runOnContext(v -> {
+            SaveBatcher batcher = new SaveBatcher(vertx, 10, 100, pages -> Future.failedFuture("boom"));
+            var checkpoint = testContext.checkpoint(2);
+            batcher.save(1, "a").onComplete(testContext.failing(e -> checkpoint.flag()));
+            batcher.save(1, "b").onComplete(testContext.failing(e -> checkpoint.flag()));
+        });
+    }
+
+    @Test
+    void drain_waits_for_the_batch_in_flight_and_the_saves_behind_it(Vertx vertx, VertxTestContext testContext) {
+        List<Map<Integer, String>> batches = new ArrayList<>();
+        List<Promise<Map<Integer, SavedPage>>> writes = new ArrayList<>();
+        vertx.runOnContext(v -> {
+            SaveBatcher batcher = new SaveBatcher(vertx, 60_000, 1, pages -> {
+                batches.add(pages);
+                Promise<Map<Integer, SavedPage>> write = Promise.promise();
+                writes.add(write);
+                return write.future();
+            });
+            batcher.save(1, "a");
+            batcher.save(2, "b");
+            batcher.drain().onComplete(testContext.succeeding(d -> testContext.verify(() -> {
+                assertEquals(List.of(Map.of(1, "a"), Map.of(2, "b")), batches);
+                assertTrue(writes.stream().allMatch(write -> write.future().isComplete()));
+                testContext.completeNow();
+            })));
+            vertx.setTimer(10, t -> writes.get(0).complete(Map.of()));
+            vertx.setTimer(20, t -> writes.get(1).fail("boom"));
+        });
+    }
+}
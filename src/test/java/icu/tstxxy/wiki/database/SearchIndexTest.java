@@ -0,0 +1,65 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchIndexTest {
+
+    @Test
+    void tokenizes_words_and_single_ideographs() {
+        assertEquals(List.of("vert", "x", "4", "事", "件", "bus"), SearchIndex.tokenize("Vert.x 4 事件Bus!"));
+    }
+
+    @Test
+    void is_loaded_once_for_every_caller_and_again_after_a_failure() {
+        SearchIndex index = new SearchIndex();
+        Promise<Void> first = Promise.promise();
+        assertSame(first.future(), index.load(first::future));
+        assertSame(first.future(), index.load(Future::succeededFuture));
+
+        first.fail("connection refused");
+        Future<Void> retried = index.load(Future::succeededFuture);
+        assertTrue(retried.succeeded());
+        assertSame(retried, index.load(() -> Future.failedFuture("not called")));
+    }
+
+    @Test
+    void ranks_rarer_and_more_frequent_terms_higher() {
+        SearchIndex index = new SearchIndex();
+        index.put(1, "Cooking", "pasta pasta pasta with tomato");
+        index.put(2, "Travel", "a long trip with some pasta");
+        index.put(3, "Gardening", "tomato plants need sun");
+
+        assertEquals(List.of(1, 2), ids(index.search("pasta", 10)));
+        assertEquals(List.of(1), ids(index.search("Pasta", 1)));
+        assertEquals("Cooking", index.search("cooking", 10).get(0).title());
+    }
+
+    @Test
+    void follows_content_updates_and_deletes() {
+        SearchIndex index = new SearchIndex();
+        index.put(1, "Notes", "old words");
+        index.updateContent(1, "new words");
+        index.updateContent(2, "never indexed");
+
+        assertTrue(index.search("old", 10).isEmpty());
+        assertEquals(List.of(1), ids(index.search("new notes", 10)));
+        assertTrue(index.search("never", 10).isEmpty());
+
+        index.remove(1);
+        assertTrue(index.search("words", 10).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    private static List<Integer> ids(List<Page> pages) {
+        return pages.stream().map(Page::id).collect(Collectors.toList());
+    }
+}
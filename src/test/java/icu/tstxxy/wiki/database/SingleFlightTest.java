@@ -0,0 +1,47 @@
+package icu.tstxxy.wiki.database;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SingleFlightTest {
+
+    @Test
+    void identical_reads_share_one_query_until_it_completes() {
+        Counter coalesced = new Counter();
+        SingleFlight reads = new SingleFlight(coalesced);
+        AtomicInteger queries = new AtomicInteger();
+        Promise<String> query = Promise.promise();
+
+        Future<String> first = reads.run("page\u00001", () -> {
+            queries.incrementAndGet();
+            return query.future();
+        });
+        Future<String> second = reads.run("page\u00001", () -> {
+            queries.incrementAndGet();
+            return Future.succeededFuture("other");
+        });
+        reads.run("page\u00002", () -> {
+            queries.incrementAndGet();
+            return Future.succeededFuture("two");
+        });
+
+        assertSame(first, second);
+        query.complete("one");
+        assertEquals("one", second.result());
+        assertEquals(0, reads.size());
+
+        reads.run("page\u00001", () -> {
+            queries.incrementAndGet();
+            return Future.succeededFuture("again");
+        });
+        assertEquals(3, queries.get());
+        assertEquals(1, coalesced.get());
+    }
+}
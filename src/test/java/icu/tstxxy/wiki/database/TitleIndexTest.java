@@ -0,0 +1,43 @@
+package icu.tstxxy.wiki.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TitleIndexTest {
+
+    @Test
+    void prefix_lookup_ignores_case_and_respects_limit() {
+        TitleIndex index = new TitleIndex();
+        index.put(1, "Vert.x");
+        index.put(2, "vertx guide");
+        index.put(3, "Version history");
+        index.put(4, "Java");
+
+        assertEquals(List.of("Version history", "Vert.x", "vertx guide"), titles(index.startingWith("VER", 10)));
+        assertEquals(List.of("Vert.x"), titles(index.startingWith("vert", 1)));
+        assertEquals(List.of(), titles(index.startingWith("z", 10)));
+        assertEquals(List.of(), titles(index.startingWith("ver", 0)));
+        assertEquals(List.of(), titles(index.startingWith("ver", -1)));
+    }
+
+    @Test
+    void follows_renames_and_deletes() {
+        TitleIndex index = new TitleIndex();
+        index.put(1, "Draft");
+        index.put(1, "Final");
+        index.put(2, "Drawing");
+        index.remove(2);
+
+        assertEquals(List.of(), titles(index.startingWith("dra", 10)));
+        assertEquals(List.of("Final"), titles(index.startingWith("f", 10)));
+        assertEquals(1, index.size());
+    }
+
+    private static List<String> titles(List<Page> pages) {
+        return pages.stream().map(Page::title).collect(Collectors.toList());
+    }
+}
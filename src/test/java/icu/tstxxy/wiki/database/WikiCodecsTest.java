@@ -0,0 +1,53 @@
+package icu.tstxxy.wiki.database;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WikiCodecsTest {
+
+    @Test
+    void local_delivery_passes_the_same_instance() {
+        var page = new Page(1, "Home", "# Home");
+        assertSame(page, new WikiCodecs.PageCodec().transform(page));
+    }
+
+    @Test
+    void page_list_round_trips_through_the_wire_form() {
+        var codec = new WikiCodecs.PageListCodec();
+        var list = new PageList(List.of(new Page(1, "Home", "# Home é"), new Page(2, "Empty", null, true)), 2);
+        var buffer = Buffer.buffer().appendString("header");
+        codec.encodeToWire(buffer, list);
+
+        var decoded = codec.decodeFromWire(6, buffer);
+        assertEquals(2, decoded.next());
+        assertEquals(2, decoded.pages().size());
+        assertEquals("# Home é", decoded.pages().get(0).content());
+        assertEquals("Empty", decoded.pages().get(1).title());
+        assertNull(decoded.pages().get(1).content());
+        assertFalse(decoded.pages().get(0).fromReplica());
+        assertTrue(decoded.pages().get(1).fromReplica());
+    }
+
+    @Test
+    void saved_page_round_trips_through_the_wire_form() {
+        var codec = new WikiCodecs.SavedPageCodec();
+        var buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, new SavedPage(4, "# Home", RevisionDelta.between("# Home", "# Home!")));
+        int superseded = buffer.length();
+        codec.encodeToWire(buffer, SavedPage.SUPERSEDED);
+
+        var decoded = codec.decodeFromWire(0, buffer);
+        assertEquals(4, decoded.revision());
+        assertEquals("# Home", decoded.previous());
+        assertEquals("# Home!", decoded.delta().applyTo(decoded.previous()));
+        assertSame(SavedPage.SUPERSEDED, codec.decodeFromWire(superseded, buffer));
+    }
+}
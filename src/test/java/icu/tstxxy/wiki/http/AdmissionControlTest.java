@@ -0,0 +1,29 @@
+package icu.tstxxy.wiki.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionControlTest {
+
+    @Test
+    void reads_are_shed_before_writes() {
+        AdmissionControl admission = new AdmissionControl(4, 1);
+
+        assertTrue(admission.tryAcquire(false));
+        assertTrue(admission.tryAcquire(false));
+        assertTrue(admission.tryAcquire(false));
+        assertFalse(admission.tryAcquire(false));
+        assertTrue(admission.tryAcquire(true));
+        assertFalse(admission.tryAcquire(true));
+        assertEquals(4, admission.inFlight());
+
+        admission.release();
+        admission.release();
+        assertTrue(admission.tryAcquire(false));
+        assertFalse(admission.tryAcquire(false));
+        assertTrue(admission.tryAcquire(true));
+    }
+}
@@ -0,0 +1,86 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.metrics.Counter;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.authentication.TokenCredentials;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@ExtendWith(VertxExtension.class)
+public class AuthCacheTest {
+
+    @Test
+    void repeated_token_skips_verification(Vertx vertx, VertxTestContext testContext) {
+        Counter hits = new Counter();
+        Counter misses = new Counter();
+        JWTAuth auth = new CachingJWTAuth(JWTAuth.create(vertx, new JWTAuthOptions().addPubSecKey(new PubSecKeyOptions()
+            .setAlgorithm("HS256").setBuffer("secret"))), 16, hits, misses);
+        String token = auth.generateToken(new JsonObject().put("username", "a"), new JWTOptions().setExpiresInMinutes(1));
+
+        auth.authenticate(new TokenCredentials(token))
+            .compose(first -> auth.authenticate(new TokenCredentials(token)).map(second -> {
+                assertSame(first, second);
+                return null;
+            }))
+            .compose(v -> auth.authenticate(new TokenCredentials(token + "x")))
+            .onComplete(testContext.failing(e -> testContext.verify(() -> {
+                assertEquals(1, hits.get());
+                assertEquals(2, misses.get());
+                assertEquals(1, ((CachingJWTAuth) auth).size());
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void concurrent_logins_share_one_lookup() {
+        CredentialCache cache = new CredentialCache(60_000, 16, new Counter(), new Counter());
+        AtomicInteger lookups = new AtomicInteger();
+        Promise<Boolean> pending = Promise.promise();
+
+        Future<Boolean> first = cache.check("a", "p", () -> {
+            lookups.incrementAndGet();
+            return pending.future();
+        });
+        Future<Boolean> second = cache.check("a", "p", () -> {
+            lookups.incrementAndGet();
+            return Future.succeededFuture(false);
+        });
+        pending.complete(true);
+
+        assertSame(first, second);
+        assertEquals(1, lookups.get());
+        assertFalse(cache.check("a", "other", () -> Future.succeededFuture(false)).result());
+    }
+
+    @Test
+    void failed_lookups_are_not_cached() {
+        CredentialCache cache = new CredentialCache(60_000, 16, new Counter(), new Counter());
+        AtomicInteger lookups = new AtomicInteger();
+
+        cache.check("a", "p", () -> {
+            lookups.incrementAndGet();
+            return Future.failedFuture("down");
+        });
+        cache.check("a", "p", () -> {
+            lookups.incrementAndGet();
+            return Future.succeededFuture(true);
+        });
+
+        assertEquals(2, lookups.get());
+    }
+}
@@ -0,0 +1,265 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.ContentHash;
+import icu.tstxxy.wiki.database.Page;
+import icu.tstxxy.wiki.database.PageList;
+import icu.tstxxy.wiki.database.RevisionDelta;
+import icu.tstxxy.wiki.database.SavedPage;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the API handlers over HTTPS against a stand-in for the database verticles on {@code wikidb.queue}.
+ */
+@ExtendWith(VertxExtension.class)
+public class HttpServerVerticleTest {
+    private static final int PORT = 18443;
+
+    private final List<Message<Object>> requests = new ArrayList<>();
+    private Function<Message<Object>, Object> database = message -> "ok";
+    private WebClient client;
+
+    @BeforeEach
+    void deploy(Vertx vertx, VertxTestContext testContext) {
+        vertx.eventBus().consumer("wikidb.queue", message -> {
+            requests.add(message);
+            message.reply(database.apply(message));
+        });
+        JsonObject config = new JsonObject()
+            .put(HttpServerVerticle.CONFIG_HTTP_PORT, PORT)
+            .put(HttpServerVerticle.CONFIG_HTTP_AUTH_ENABLED, false)
+            .put(HttpServerVerticle.CONFIG_HTTP_DB_DIRECT, false);
+        client = WebClient.create(vertx, new WebClientOptions().setSsl(true).setTrustAll(true).setVerifyHost(false)
+            .setDefaultHost("localhost").setDefaultPort(PORT));
+        vertx.deployVerticle(new HttpServerVerticle(), new DeploymentOptions().setConfig(config),
+            testContext.succeedingThenComplete());
+    }
+
+    @Test
+    void creates_a_page_from_the_app_payload(Vertx vertx, VertxTestContext testContext) {
+        client.post("/api/pages").sendJsonObject(new JsonObject().put("title", "Home").put("content", "# Home\n"))
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(201, response.statusCode());
+                assertEquals(1, requests.size());
+                assertEquals("create-page", requests.get(0).headers().get("action"));
+                Page page = (Page) requests.get(0).body();
+                assertEquals("Home", page.title());
+                assertEquals("# Home\n", page.content());
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void rejects_a_page_without_content(Vertx vertx, VertxTestContext testContext) {
+        client.post("/api/pages").sendJsonObject(new JsonObject().put("title", "Home").put("markdown", "# Home\n"))
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(400, response.statusCode());
+                assertEquals(0, requests.size());
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void rejects_a_save_without_markdown_text(Vertx vertx, VertxTestContext testContext) {
+        client.put("/api/pages/1").sendJsonObject(new JsonObject().putNull("markdown"))
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(400, response.statusCode());
+                assertEquals(0, requests.size());
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void a_conditional_save_matching_a_page_read_from_a_replica_succeeds(Vertx vertx, VertxTestContext testContext) {
+        String[] stored = {"# Home"};
+        database = message -> {
+            if ("get-page-by-id".equals(message.headers().get("action"))) {
+                return new Page(1, "Home", stored[0], true);
+            }
+            stored[0] = ((Page) message.body()).content();
+            return new SavedPage(2, null, null);
+        };
+        String etag = "\"" + ContentHash.hex(ContentHash.of("# Home")) + "\"";
+        client.put("/api/pages/1").putHeader("If-Match", etag).sendJsonObject(new JsonObject().put("markdown", "# Home!"))
+            .compose(saved -> {
+                testContext.verify(() -> assertEquals(200, saved.statusCode()));
+                // The page now has another version
+                return client.put("/api/pages/1").putHeader("If-Match", etag)
+                    .sendJsonObject(new JsonObject().put("markdown", "# Home?"));
+            })
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(412, response.statusCode());
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void pushes_the_delta_of_the_committed_revision_without_reading_the_page(Vertx vertx, VertxTestContext testContext) {
+        database = message -> new SavedPage(3, "# Home\n", RevisionDelta.between("# Home\n", "# Home\nMore\n"));
+        vertx.eventBus().<JsonObject>consumer("page.saved.1", message -> testContext.verify(() -> {
+            JsonObject event = message.body();
+            assertEquals("\"" + ContentHash.hex(ContentHash.of("# Home\n")) + "\"", event.getString("base"));
+            assertEquals("More\n", event.getJsonObject("delta").getString("text"));
+            assertEquals(1, requests.size());
+            assertEquals("save-page", requests.get(0).headers().get("action"));
+            testContext.completeNow();
+        }));
+        client.put("/api/pages/1").sendJsonObject(new JsonObject().put("markdown", "# Home\nMore\n"))
+            .onComplete(testContext.succeeding(response -> testContext.verify(() ->
+                assertEquals(200, response.statusCode()))));
+    }
+
+    @Test
+    void lists_a_slice_of_pages_with_the_requested_fields(Vertx vertx, VertxTestContext testContext) {
+        database = message -> new PageList(List.of(new Page(4, "Home", null), new Page(7, "Guide", null)), 7);
+        client.get("/api/pages?after=3&limit=5000&fields=title,id").send()
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(200, response.statusCode());
+                assertEquals("pages-after", requests.get(0).headers().get("action"));
+                // Capped to http.pages.max.limit, content left out as it was not asked for
+                assertEquals(new JsonObject().put("after", 3).put("limit", 1000).put("content", false),
+                    requests.get(0).body());
+                JsonObject body = response.bodyAsJsonObject();
+                assertEquals(new JsonArray().add(new JsonObject().put("title", "Home").put("id", 4))
+                    .add(new JsonObject().put("title", "Guide").put("id", 7)), body.getJsonArray("pages"));
+                assertEquals(7, body.getInteger("next"));
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void rejects_a_malformed_limit(Vertx vertx, VertxTestContext testContext) {
+        client.get("/api/pages?limit=ten").send()
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(400, response.statusCode());
+                assertEquals(0, requests.size());
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void streams_every_page_slice_by_slice_without_a_limit(Vertx vertx, VertxTestContext testContext) {
+        database = message -> ((JsonObject) message.body()).getInteger("after") == 0
+            ? new PageList(List.of(new Page(1, "Home", "# Home"), new Page(2, "Guide", "# Guide")), 2)
+            : new PageList(List.of(new Page(3, "Last", "# Last")));
+        client.get("/api/pages").send()
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(200, response.statusCode());
+                assertEquals("chunked", response.getHeader("Transfer-Encoding"));
+                assertEquals(2, requests.size());
+                assertEquals(2, ((JsonObject) requests.get(1).body()).getInteger("after"));
+                assertTrue(((JsonObject) requests.get(1).body()).getBoolean("content"));
+                JsonArray pages = response.bodyAsJsonObject().getJsonArray("pages");
+                assertEquals(3, pages.size());
+                assertEquals(new JsonObject().put("id", 3).put("title", "Last").put("content", "# Last"),
+                    pages.getJsonObject(2));
+                testContext.completeNow();
+            })));
+    }
+
+    @Test
+    void page_saves_are_only_pushed_to_sockets_with_a_token(Vertx vertx, VertxTestContext testContext) {
+        JsonObject config = new JsonObject()
+            .put(HttpServerVerticle.CONFIG_HTTP_PORT, PORT + 1)
+            .put(HttpServerVerticle.CONFIG_HTTP_DB_DIRECT, false);
+        String token = JWTAuth.create(vertx, new JWTAuthOptions().addPubSecKey(new PubSecKeyOptions()
+            .setAlgorithm("HS256").setBuffer("secret"))).generateToken(new JsonObject().put("username", "test"));
+        HttpClient http = vertx.createHttpClient(new HttpClientOptions().setSsl(true).setTrustAll(true).setVerifyHost(false));
+
+        vertx.deployVerticle(new HttpServerVerticle(), new DeploymentOptions().setConfig(config))
+            .compose(id -> http.webSocket(PORT + 1, "localhost", "/eventbus/websocket"))
+            .onComplete(testContext.succeeding(socket -> {
+                socket.handler(buffer -> testContext.verify(() -> {
+                    JsonObject frame = buffer.toJsonObject();
+                    if ("err".equals(frame.getString("type"))) {
+                        assertEquals("rejected", frame.getString("body"));
+                        return;
+                    }
+                    assertEquals("rec", frame.getString("type"));
+                    assertEquals("with token", frame.getJsonObject("body").getString("client"));
+                    testContext.completeNow();
+                }));
+                // Accepted registrations are not acknowledged, publish once each had time to go through
+                socket.writeTextMessage(register("page.saved.1", new JsonObject()));
+                vertx.setTimer(200, t -> {
+                    vertx.eventBus().publish("page.saved.1", new JsonObject().put("client", "without token"));
+                    socket.writeTextMessage(register("page.saved.1", new JsonObject().put("token", token)));
+                    vertx.setTimer(200, u -> vertx.eventBus().publish("page.saved.1",
+                        new JsonObject().put("client", "with token")));
+                });
+            }));
+    }
+
+    @Test
+    void previews_are_tagged_by_the_bridge_and_cannot_be_published(Vertx vertx, VertxTestContext testContext) {
+        HttpClient http = vertx.createHttpClient(new HttpClientOptions().setSsl(true).setTrustAll(true).setVerifyHost(false));
+        List<String> rejected = new ArrayList<>();
+        http.webSocket(PORT, "localhost", "/eventbus/websocket").onComplete(testContext.succeeding(socket -> {
+            socket.handler(buffer -> testContext.verify(() -> {
+                JsonObject frame = buffer.toJsonObject();
+                if ("err".equals(frame.getString("type"))) {
+                    rejected.add(frame.getString("body"));
+                    return;
+                }
+                assertEquals(List.of("rejected"), rejected);
+                assertEquals("preview", frame.getString("address"));
+                assertNull(frame.getValue("failureCode"));
+                assertTrue(frame.getString("body").contains("<h1>"));
+                testContext.completeNow();
+            }));
+            JsonObject forged = new JsonObject().put("client", "someone else").put("seq", "not a number");
+            socket.writeTextMessage(new JsonObject().put("type", "publish").put("address", "app.markdown")
+                .put("headers", forged).put("body", "# Published").encode());
+            socket.writeTextMessage(new JsonObject().put("type", "send").put("address", "app.markdown")
+                .put("replyAddress", "preview").put("headers", forged).put("body", "# Sent").encode());
+        }));
+    }
+
+    @Test
+    void traces_require_a_token_when_auth_is_enabled(Vertx vertx, VertxTestContext testContext) {
+        JsonObject config = new JsonObject()
+            .put(HttpServerVerticle.CONFIG_HTTP_PORT, PORT + 2)
+            .put(HttpServerVerticle.CONFIG_HTTP_DB_DIRECT, false);
+        String token = JWTAuth.create(vertx, new JWTAuthOptions().addPubSecKey(new PubSecKeyOptions()
+            .setAlgorithm("HS256").setBuffer("secret"))).generateToken(new JsonObject().put("username", "test"));
+
+        vertx.deployVerticle(new HttpServerVerticle(), new DeploymentOptions().setConfig(config))
+            .compose(id -> client.get(PORT + 2, "localhost", "/admin/traces").send())
+            .compose(anonymous -> {
+                testContext.verify(() -> assertEquals(401, anonymous.statusCode()));
+                return client.get(PORT + 2, "localhost", "/admin/traces").bearerTokenAuthentication(token).send();
+            })
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals(200, response.statusCode());
+                assertTrue(response.bodyAsJsonObject().getBoolean("success"));
+                testContext.completeNow();
+            })));
+    }
+
+    private static String register(String address, JsonObject headers) {
+        return new JsonObject().put("type", "register").put("address", address).put("headers", headers).encode();
+    }
+}
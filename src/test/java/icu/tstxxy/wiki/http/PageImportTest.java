@@ -0,0 +1,77 @@
+package icu.tstxxy.wiki.http;
+
+import icu.tstxxy.wiki.database.Page;
+import icu.tstxxy.wiki.database.PageList;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+public class PageImportTest {
+
+    @Test
+    void writes_batches_one_at_a_time(Vertx vertx, VertxTestContext testContext) {
+        List<List<String>> batches = new ArrayList<>();
+        String body = "{\"title\":\"A\",\"content\":\"a\"}\n{\"title\":\"B\",\"content\":\"b\"}\n"
+            + "{\"title\":\"C\",\"content\":\"c\"}\n{\"title\":\"A\",\"content\":\"again\"}\n{\"title\":\"D\",\"content\":\"d\"}\n";
+
+        post(vertx, body, pages -> {
+            Promise<JsonObject> written = Promise.promise();
+            List<String> titles = pages.pages().stream().map(Page::title).collect(Collectors.toList());
+            // Slow writes must hold the rest of the stream back
+            vertx.setTimer(20, t -> {
+                long duplicates = titles.stream().filter(title -> batches.stream().anyMatch(b -> b.contains(title))).count();
+                batches.add(titles);
+                written.complete(new JsonObject().put("imported", titles.size() - duplicates).put("skipped", duplicates));
+            });
+            return written.future();
+        }).onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+            assertEquals(List.of(List.of("A", "B"), List.of("C", "A"), List.of("D")), batches);
+            assertEquals(new JsonObject().put("imported", 4).put("skipped", 1), response);
+            testContext.completeNow();
+        })));
+    }
+
+    @Test
+    void stops_at_the_first_line_that_is_not_a_page(Vertx vertx, VertxTestContext testContext) {
+        List<List<Page>> batches = new ArrayList<>();
+        String body = "{\"title\":\"A\",\"content\":\"a\"}\n{\"title\":\"B\",\"content\":\"b\"}\n{\"title\":\"C\"}\n"
+            + "{\"title\":\"D\",\"content\":\"d\"}\n";
+
+        post(vertx, body, pages -> {
+            batches.add(pages.pages());
+            return Future.succeededFuture(new JsonObject().put("imported", pages.pages().size()));
+        }).onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+            assertEquals(1, batches.size());
+            assertEquals("Line 3 is not a page with a title and content", response.getString("error"));
+            assertEquals(2, response.getLong("imported"));
+            testContext.completeNow();
+        })));
+    }
+
+    private static Future<JsonObject> post(Vertx vertx, String body, Function<PageList, Future<JsonObject>> writer) {
+        return vertx.createHttpServer().requestHandler(request -> {
+            var pageImport = new PageImport(request, 2, writer);
+            pageImport.run().onComplete(ar -> request.response().end(ar.succeeded() ? ar.result().encode()
+                : new JsonObject().put("error", ar.cause().getMessage()).put("imported", pageImport.imported()).encode()));
+        }).listen(0).compose(server -> vertx.createHttpClient()
+            .request(HttpMethod.POST, server.actualPort(), "localhost", "/")
+            .compose(request -> request.send(Buffer.buffer(body)))
+            .compose(response -> response.body())
+            .map(Buffer::toJsonObject));
+    }
+}
@@ -0,0 +1,68 @@
+package icu.tstxxy.wiki.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PageVersionsTest {
+
+    @Test
+    void reads_started_before_a_write_of_the_page_do_not_fill_it() {
+        PageVersions versions = new PageVersions(10);
+        long generation = versions.generation();
+        versions.invalidate(1);
+        versions.fill(generation, 1, 1L);
+        versions.fill(generation, 2, 2L);
+
+        assertNull(versions.get(1));
+        assertEquals(2L, versions.get(2));
+    }
+
+    @Test
+    void only_one_conditional_write_wins() {
+        PageVersions versions = new PageVersions(10);
+        versions.fill(versions.generation(), 1, 1L);
+
+        long generation = versions.generation();
+        assertTrue(versions.beginUpdate(generation, 1, 1L));
+        assertFalse(versions.beginUpdate(generation, 1, 1L));
+        versions.endUpdate(1);
+        assertNull(versions.get(1));
+
+        assertFalse(versions.beginUpdate(generation, 1, 2L));
+        assertTrue(versions.beginUpdate(versions.generation(), 1, 2L));
+        assertFalse(versions.beginUpdate(versions.generation(), 1, 2L));
+    }
+
+    @Test
+    void a_page_not_known_yet_is_reserved_at_the_version_read() {
+        PageVersions versions = new PageVersions(10);
+        long generation = versions.generation();
+        versions.invalidate(2);
+
+        assertTrue(versions.beginUpdate(generation, 1, 1L));
+        assertEquals(1L, versions.get(1));
+        assertFalse(versions.beginUpdate(generation, 2, 2L));
+    }
+
+    @Test
+    void forgets_the_least_recently_used_pages_beyond_its_size() {
+        PageVersions versions = new PageVersions(2);
+        versions.fill(versions.generation(), 1, 1L);
+        versions.fill(versions.generation(), 2, 2L);
+        versions.get(1);
+        long generation = versions.generation();
+        versions.invalidate(3);
+
+        assertEquals(2, versions.size());
+        assertEquals(1L, versions.get(1));
+        assertNull(versions.get(2));
+        // Page 3 was written after the read started and may have been evicted since
+        versions.fill(generation, 4, 4L);
+        versions.fill(generation, 3, 3L);
+        assertNull(versions.get(3));
+    }
+}
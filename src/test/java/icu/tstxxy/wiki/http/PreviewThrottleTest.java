@@ -0,0 +1,43 @@
+package icu.tstxxy.wiki.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PreviewThrottleTest {
+
+    @Test
+    void clients_are_limited_to_their_burst_separately() {
+        PreviewThrottle throttle = new PreviewThrottle(0.001, 2);
+
+        assertEquals(1, throttle.admit("a"));
+        assertEquals(2, throttle.admit("a"));
+        assertEquals(-1, throttle.admit("a"));
+        assertEquals(1, throttle.admit("b"));
+    }
+
+    @Test
+    void only_the_latest_request_of_a_client_is_current() {
+        PreviewThrottle throttle = new PreviewThrottle(0.001, 5);
+        long first = throttle.admit("a");
+        long second = throttle.admit("a");
+
+        assertFalse(throttle.isLatest("a", first));
+        assertTrue(throttle.isLatest("a", second));
+
+        throttle.remove("a");
+        assertTrue(throttle.isLatest("a", first));
+        assertEquals(1, throttle.admit("a"));
+    }
+
+    @Test
+    void malformed_sequence_numbers_are_rejected() {
+        assertEquals(3, PreviewThrottle.parseSeq("3"));
+        assertEquals(-1, PreviewThrottle.parseSeq(null));
+        assertEquals(-1, PreviewThrottle.parseSeq("x"));
+        assertEquals(-1, PreviewThrottle.parseSeq("-7"));
+        assertEquals(-1, PreviewThrottle.parseSeq("99999999999999999999"));
+    }
+}
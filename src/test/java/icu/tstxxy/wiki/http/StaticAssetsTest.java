@@ -0,0 +1,59 @@
+package icu.tstxxy.wiki.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StaticAssetsTest {
+
+    @Test
+    void index_references_fingerprinted_assets() {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("index.html", bytes("<script src=\"/app/wiki.js\"></script><script src=\"https://cdn/x.js\"></script><script src=\"/app/a.js\"></script>"));
+        files.put("a.js", bytes("a"));
+        files.put("wiki.js", bytes("console.log('wiki');".repeat(20)));
+        StaticAssets assets = new StaticAssets("/app/", "index.html", files);
+
+        String index = assets.body("/app/index.html");
+        Matcher matcher = Pattern.compile("/app/wiki\\.[0-9a-f]{16}\\.js").matcher(index);
+        assertTrue(matcher.find(), index);
+        assertTrue(index.contains("https://cdn/x.js"));
+        assertEquals(assets.body("/app/wiki.js"), assets.body(matcher.group()));
+        assertTrue(assets.compressed("/app/wiki.js"));
+        assertFalse(assets.compressed("/app/a.js"));
+    }
+
+    @Test
+    void gzip_is_accepted_only_with_a_non_zero_quality() {
+        assertTrue(StaticAssets.acceptsGzip("gzip, deflate, br"));
+        assertTrue(StaticAssets.acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+        assertTrue(StaticAssets.acceptsGzip("br, *;q=0.1"));
+        assertFalse(StaticAssets.acceptsGzip("gzip;q=0"));
+        assertFalse(StaticAssets.acceptsGzip("gzip; q=0.000, *"));
+        assertFalse(StaticAssets.acceptsGzip("identity, *;q=0"));
+        assertFalse(StaticAssets.acceptsGzip("br"));
+        assertFalse(StaticAssets.acceptsGzip(null));
+    }
+
+    @Test
+    void if_none_match_accepts_lists_weak_tags_and_any() {
+        String etag = "\"0123456789abcdef-gzip\"";
+
+        assertTrue(HttpServerVerticle.etagMatches("\"other\", " + etag, etag, true));
+        assertTrue(HttpServerVerticle.etagMatches("W/" + etag, etag, true));
+        assertTrue(HttpServerVerticle.etagMatches("*", etag, true));
+        assertFalse(HttpServerVerticle.etagMatches("\"0123456789abcdef\"", etag, true));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
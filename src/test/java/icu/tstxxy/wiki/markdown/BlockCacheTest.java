@@ -0,0 +1,32 @@
+package icu.tstxxy.wiki.markdown;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BlockCacheTest {
+
+    @Test
+    void hit_requires_the_same_block_text() {
+        BlockCache cache = new BlockCache(1024);
+        cache.put(42L, "a\n", "<p>a</p>");
+
+        assertEquals("<p>a</p>", cache.get(42L, "a\n"));
+        assertNull(cache.get(42L, "b\n"));
+    }
+
+    @Test
+    void evicts_least_recently_used_when_over_budget() {
+        BlockCache cache = new BlockCache(3 * (2 * (2 + 10) + 64));
+        cache.put(1L, "1\n", "0123456789");
+        cache.put(2L, "2\n", "0123456789");
+        cache.put(3L, "3\n", "0123456789");
+        cache.get(1L, "1\n");
+        cache.put(4L, "4\n", "0123456789");
+
+        assertNull(cache.get(2L, "2\n"));
+        assertEquals("0123456789", cache.get(1L, "1\n"));
+        assertEquals("0123456789", cache.get(4L, "4\n"));
+    }
+}
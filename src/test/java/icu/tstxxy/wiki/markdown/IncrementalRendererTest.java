@@ -0,0 +1,39 @@
+package icu.tstxxy.wiki.markdown;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IncrementalRendererTest {
+
+    @Test
+    void splits_top_level_blocks_at_blank_lines() {
+        assertEquals(List.of("# Title\n", "Some text\nmore text\n", "Last\n"),
+            IncrementalRenderer.splitBlocks("# Title\n\nSome text\nmore text\n\n\nLast"));
+    }
+
+    @Test
+    void keeps_loose_lists_quotes_and_fenced_code_together() {
+        assertEquals(List.of("- a\n\n- b\n\n  continued\n", "> q\n\n> r\n", "```\ncode\n\nmore\n```\n", "end\n"),
+            IncrementalRenderer.splitBlocks("- a\n\n- b\n\n  continued\n\n> q\n\n> r\n\n```\ncode\n\nmore\n```\n\nend\n"));
+    }
+
+    @Test
+    void falls_back_to_one_block_with_link_references() {
+        String markdown = "See [home][1].\n\n[1]: http://example.com\n";
+        assertEquals(List.of(markdown), IncrementalRenderer.splitBlocks(markdown));
+    }
+
+    @Test
+    void an_edit_keeps_the_ids_of_untouched_blocks() {
+        Set<String> before = IncrementalRenderer.blockIds("# Title\n\nFirst\n\nSecond\n");
+        Set<String> after = IncrementalRenderer.blockIds("# Title\n\nFirst, edited\n\nSecond\n");
+
+        assertEquals(3, after.size());
+        after.retainAll(before);
+        assertEquals(2, after.size());
+    }
+}
@@ -0,0 +1,65 @@
+package icu.tstxxy.wiki.markdown;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(VertxExtension.class)
+public class MarkdownRendererTest {
+
+    @Test
+    void rejects_documents_over_the_size_limit(Vertx vertx, VertxTestContext testContext) {
+        MarkdownRenderer renderer = new MarkdownRenderer(vertx, 1, 1, 1000, 10);
+        renderer.preview("# 0123456789").onComplete(testContext.failing(e -> testContext.verify(() -> {
+            assertEquals(RenderException.Reason.TOO_LARGE, ((RenderException) e).reason());
+            assertEquals(0, renderer.queued());
+            testContext.completeNow();
+        })));
+    }
+
+    @Test
+    void rejects_renders_beyond_the_queue_limit(Vertx vertx, VertxTestContext testContext) {
+        MarkdownRenderer renderer = new MarkdownRenderer(vertx, 1, 1, 1000, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        var checkpoint = testContext.checkpoint(2);
+        renderer.execute(() -> await(release)).onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+            assertEquals(0, renderer.queued());
+            checkpoint.flag();
+        })));
+        renderer.preview("# Title").onComplete(testContext.failing(e -> testContext.verify(() -> {
+            assertEquals(RenderException.Reason.SATURATED, ((RenderException) e).reason());
+            assertEquals(1, renderer.queued());
+            release.countDown();
+            checkpoint.flag();
+        })));
+    }
+
+    @Test
+    void fails_renders_that_take_too_long_but_keeps_their_slot(Vertx vertx, VertxTestContext testContext) {
+        MarkdownRenderer renderer = new MarkdownRenderer(vertx, 1, 1, 50, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        renderer.execute(() -> await(release)).onComplete(testContext.failing(e -> testContext.verify(() -> {
+            assertEquals(RenderException.Reason.TIMEOUT, ((RenderException) e).reason());
+            // The worker is still busy with it
+            assertEquals(1, renderer.queued());
+            release.countDown();
+            testContext.completeNow();
+        })));
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "<p>done</p>";
+    }
+}
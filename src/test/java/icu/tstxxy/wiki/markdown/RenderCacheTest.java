@@ -0,0 +1,45 @@
+package icu.tstxxy.wiki.markdown;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RenderCacheTest {
+
+    @Test
+    void hit_requires_matching_content_hash() {
+        RenderCache cache = new RenderCache(1024);
+        cache.put(1, 42L, "<p>a</p>");
+
+        assertEquals("<p>a</p>", cache.get(1, 42L));
+        assertNull(cache.get(1, 43L));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void evicts_least_recently_used_when_over_budget() {
+        RenderCache cache = new RenderCache(3 * (2 * 10 + 64));
+        cache.put(1, 1L, "0123456789");
+        cache.put(2, 2L, "0123456789");
+        cache.put(3, 3L, "0123456789");
+        cache.get(1, 1L);
+        cache.put(4, 4L, "0123456789");
+
+        assertNull(cache.get(2, 2L));
+        assertEquals("0123456789", cache.get(1, 1L));
+        assertEquals(1, cache.evictions());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void invalidate_releases_budget() {
+        RenderCache cache = new RenderCache(1024);
+        cache.put(1, 1L, "0123456789");
+        cache.invalidate(1);
+
+        assertNull(cache.get(1, 1L));
+        assertEquals(0, cache.bytes());
+    }
+}
@@ -0,0 +1,45 @@
+package icu.tstxxy.wiki.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Test
+    void same_name_and_labels_return_the_same_metric() {
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        assertSame(metrics.counter("requests_total", "Requests", "route", "a"),
+            metrics.counter("requests_total", "Requests", "route", "a"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram("requests_total", "Requests"));
+    }
+
+    @Test
+    void histogram_buckets_are_cumulative() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        Histogram histogram = metrics.histogram("latency_seconds", "Latency", "action", "get");
+        histogram.record(50_000);
+        histogram.record(2_000_000);
+        histogram.record(20_000_000_000L);
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("# TYPE latency_seconds histogram\n"));
+        assertTrue(scrape.contains("latency_seconds_bucket{action=\"get\",le=\"0.0001\"} 1\n"));
+        assertTrue(scrape.contains("latency_seconds_bucket{action=\"get\",le=\"0.0025\"} 2\n"));
+        assertTrue(scrape.contains("latency_seconds_bucket{action=\"get\",le=\"+Inf\"} 3\n"));
+        assertTrue(scrape.contains("latency_seconds_count{action=\"get\"} 3\n"));
+    }
+
+    @Test
+    void supplied_gauges_are_read_at_scrape_time() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        double[] value = {1};
+        metrics.gauge("queued", "Queued", () -> value[0]);
+        value[0] = 2.5;
+
+        assertTrue(metrics.scrape().contains("queued 2.5\n"));
+    }
+}
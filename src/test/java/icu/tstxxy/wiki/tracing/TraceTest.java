@@ -0,0 +1,40 @@
+package icu.tstxxy.wiki.tracing;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TraceTest {
+
+    @Test
+    void spans_survive_the_reply_header() {
+        Trace db = new Trace("abc", 1_000);
+        db.span("db.queue", 1_000, 3_000);
+        db.span("db.get-page-by-id", 3_000, 2_003_000);
+
+        Trace http = new Trace("abc", 0);
+        http.decodeSpans(db.encodeSpans());
+        http.decodeSpans("not a span");
+
+        JsonArray spans = http.toJson().getJsonArray("spans");
+        assertEquals(2, spans.size());
+        assertEquals("db.get-page-by-id", spans.getJsonObject(1).getString("name"));
+        assertEquals(0.003, spans.getJsonObject(1).getDouble("startMs"));
+        assertEquals(2.0, spans.getJsonObject(1).getDouble("durationMs"));
+    }
+
+    @Test
+    void buffer_keeps_the_newest_traces() {
+        TraceBuffer buffer = new TraceBuffer(2);
+        buffer.add(new JsonObject().put("id", "1"));
+        buffer.add(new JsonObject().put("id", "2"));
+        buffer.add(new JsonObject().put("id", "3"));
+
+        JsonArray traces = buffer.snapshot();
+        assertEquals(2, traces.size());
+        assertEquals("3", traces.getJsonObject(0).getString("id"));
+        assertEquals("2", traces.getJsonObject(1).getString("id"));
+    }
+}